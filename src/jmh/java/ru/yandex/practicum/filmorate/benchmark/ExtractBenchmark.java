@@ -0,0 +1,120 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.LongGroups;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение жанров, лайков и друзей всех фильмов и пользователей: {@link LongGroups}, которым пользуются хранилища,
+ * против прежнего разбора в HashMap с упакованными id (методы legacy*). Лайки и друзья в обоих вариантах читаются
+ * одним и тем же запросом к H2, так что разница — это разбор строк. Прежние жанры, как и исходный код,
+ * читаются с соединением с genres и создают Genre на каждую строку.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ExtractBenchmark {
+
+    private static final String GENRES = "select film_id, genre_id from film_genres order by film_id, genre_id";
+    private static final String LEGACY_GENRES = "select film_genres.film_id, film_genres.genre_id, " +
+            "genres.name as genre_name from film_genres left join genres on film_genres.genre_id = genres.id";
+    private static final String LIKES = "select film_id, user_id from film_likes order by film_id, user_id";
+    private static final String FRIENDS =
+            "select user_id, friend_id, connection from user_friends order by user_id, friend_id";
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup
+    public void setUp(SeededDatabase database) {
+        jdbcTemplate = database.getJdbcTemplate();
+    }
+
+    @Benchmark
+    public LongGroups groupGenres() {
+        return jdbcTemplate.query(GENRES, LongGroups.extractor());
+    }
+
+    @Benchmark
+    public LongGroups groupLikes() {
+        return jdbcTemplate.query(LIKES, LongGroups.extractor());
+    }
+
+    @Benchmark
+    public LongGroups groupFriends() {
+        return jdbcTemplate.query(FRIENDS, LongGroups.extractor(User.ConnectionType.Confirmed.name()));
+    }
+
+    @Benchmark
+    public Map<Long, Set<Genre>> legacyExtractGenres() {
+        return jdbcTemplate.query(LEGACY_GENRES, rs -> {
+            HashMap<Long, Set<Genre>> map = new HashMap<>();
+            while (rs.next()) {
+                if (map.containsKey(rs.getLong("film_id"))) {
+                    map.get(rs.getLong("film_id"))
+                            .add(new Genre(rs.getLong("genre_id"), rs.getString("genre_name")));
+                } else {
+                    Set<Genre> genre = new HashSet<>();
+                    genre.add(new Genre(rs.getLong("genre_id"), rs.getString("genre_name")));
+                    map.put(rs.getLong("film_id"), genre);
+                }
+            }
+            return map;
+        });
+    }
+
+    @Benchmark
+    public Map<Long, Set<Long>> legacyExtractLikes() {
+        return jdbcTemplate.query(LIKES, rs -> {
+            HashMap<Long, Set<Long>> map = new HashMap<>();
+            while (rs.next()) {
+                if (map.containsKey(rs.getLong("film_id"))) {
+                    map.get(rs.getLong("film_id"))
+                            .add(rs.getLong("user_id"));
+                } else {
+                    Set<Long> like = new HashSet<>();
+                    like.add(rs.getLong("user_id"));
+                    map.put(rs.getLong("film_id"), like);
+                }
+            }
+            return map;
+        });
+    }
+
+    @Benchmark
+    public Map<Long, Set<User.Friend>> legacyExtractFriends() {
+        return jdbcTemplate.query(FRIENDS, rs -> {
+            HashMap<Long, Set<User.Friend>> map = new HashMap<>();
+            while (rs.next()) {
+                if (map.containsKey(rs.getLong("user_id"))) {
+                    map.get(rs.getLong("user_id"))
+                            .add(new User.Friend(
+                                    rs.getLong("user_id"),
+                                    rs.getLong("friend_id"),
+                                    User.ConnectionType.valueOf(rs.getString("connection"))));
+                } else {
+                    Set<User.Friend> friend = new HashSet<>();
+                    friend.add(new User.Friend(
+                            rs.getLong("user_id"),
+                            rs.getLong("friend_id"),
+                            User.ConnectionType.valueOf(rs.getString("connection"))));
+                    map.put(rs.getLong("user_id"), friend);
+                }
+            }
+            return map;
+        });
+    }
+}
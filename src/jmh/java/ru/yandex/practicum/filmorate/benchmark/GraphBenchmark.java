@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.service.FriendGraph;
+import ru.yandex.practicum.filmorate.service.LikeIndex;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FriendGraph} и {@link LikeIndex} на синтетических данных без базы.
+ * По умолчанию 100000 пользователей по 20 друзей (2 млн связей) и по 20 лайков на 10000 фильмов.
+ * Для подсказок друзей и рекомендаций замеряется время отдельных вызовов, чтобы видеть p50 и p99.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GraphBenchmark {
+
+    @Param("100000")
+    public int users;
+
+    @Param("10000")
+    public int films;
+
+    @Param("20")
+    public int degree;
+
+    private FriendGraph graph;
+    private LikeIndex likeIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        graph = new FriendGraph(null, 4096);
+        FriendGraph.Builder friends = new FriendGraph.Builder();
+        for (int userId = 1; userId <= users; userId++) {
+            TreeSet<Integer> ids = new TreeSet<>();
+            while (ids.size() < degree) {
+                // Половина друзей — соседи по id, чтобы у графа были плотные кластеры и общие друзья.
+                int friendId = random.nextBoolean()
+                        ? Math.floorMod(userId + random.nextInt(200) - 100, users) + 1
+                        : random.nextInt(users) + 1;
+                if (friendId != userId) {
+                    ids.add(friendId);
+                }
+            }
+            for (int friendId : ids) {
+                friends.add(userId, friendId, random.nextInt(4) != 0);
+            }
+        }
+        graph.load(friends);
+
+        likeIndex = new LikeIndex(null, null, 20, 1000, 0);
+        LikeIndex.Builder likes = new LikeIndex.Builder();
+        for (int userId = 1; userId <= users; userId++) {
+            for (int i = 0; i < degree; i++) {
+                likes.add(randomFilm(random), userId);
+            }
+        }
+        likeIndex.load(likes);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long[] suggestFriends() {
+        return graph.suggestFriends(randomUser(), 10);
+    }
+
+    @Benchmark
+    public long[] getCommonFriends() {
+        return graph.getCommonFriends(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long[] recommend() {
+        return likeIndex.recommend(randomUser(), 10);
+    }
+
+    @Benchmark
+    public void like() {
+        likeIndex.like(randomFilm(ThreadLocalRandom.current()), randomUser());
+    }
+
+    private long randomUser() {
+        return ThreadLocalRandom.current().nextInt(users) + 1;
+    }
+
+    /**
+     * Популярность фильмов распределена по степенному закону.
+     */
+    private int randomFilm(Random random) {
+        return (int) Math.min(films, Math.floor(Math.pow(films + 1, random.nextDouble())));
+    }
+}
@@ -0,0 +1,153 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.AopTestUtils;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.service.FriendGraph;
+import ru.yandex.practicum.filmorate.service.LikeIndex;
+import ru.yandex.practicum.filmorate.service.PopularityIndex;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Приложение на базе H2 в памяти, заполненной синтетическими данными.
+ * Объёмы задаются параметрами JMH, например {@code -p films=100000 -p likesPerUser=50}.
+ * Популярность фильмов распределена по степенному закону, половина друзей пользователя — соседи по id.
+ */
+@State(Scope.Benchmark)
+public class SeededDatabase {
+
+    private static final int GENRES = 6;
+    private static final int RATINGS = 5;
+    private static final int BATCH_SIZE = 10_000;
+
+    @Param("10000")
+    public int films;
+
+    @Param("10000")
+    public int users;
+
+    @Param("20")
+    public int likesPerUser;
+
+    @Param("20")
+    public int friendsPerUser;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:filmorate-jmh;DB_CLOSE_DELAY=-1",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN");
+        seed(context.getBean(JdbcTemplate.class), new Random(42));
+
+        context.getBean(PopularityIndex.class).rebuild();
+        context.getBean(FriendGraph.class).reload();
+        context.getBean(LikeIndex.class).rebuild();
+        context.getBean(FilmSearchIndex.class).rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * Бин без прокси Spring, чтобы замерять сам класс и вызывать его методы с пакетным доступом.
+     */
+    public <T> T getTarget(String name, Class<T> type) {
+        return AopTestUtils.getUltimateTargetObject(context.getBean(name, type));
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return context.getBean(JdbcTemplate.class);
+    }
+
+    private void seed(JdbcTemplate jdbcTemplate, Random random) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int userId = 1; userId <= users; userId++) {
+            rows.add(new Object[]{userId, "user" + userId + "@mail.ru", "user" + userId, "Пользователь " + userId,
+                    Timestamp.valueOf(LocalDate.of(1970, 1, 1).plusDays(random.nextInt(15_000)).atStartOfDay())});
+        }
+        insert(jdbcTemplate, "insert into users (id, email, login, name, birthday) values (?, ?, ?, ?, ?)", rows);
+
+        for (int filmId = 1; filmId <= films; filmId++) {
+            rows.add(new Object[]{filmId, "Фильм " + filmId, "Описание фильма " + filmId,
+                    Timestamp.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(27_000)).atStartOfDay()),
+                    60 + random.nextInt(120), 1 + random.nextInt(RATINGS)});
+        }
+        insert(jdbcTemplate, "insert into films (id, name, description, release_date, duration, rating_mpa) " +
+                "values (?, ?, ?, ?, ?, ?)", rows);
+
+        for (int filmId = 1; filmId <= films; filmId++) {
+            int first = 1 + random.nextInt(GENRES);
+            rows.add(new Object[]{filmId, first});
+            if (random.nextBoolean()) {
+                rows.add(new Object[]{filmId, 1 + (first % GENRES)});
+            }
+        }
+        insert(jdbcTemplate, "insert into film_genres (film_id, genre_id) values (?, ?)", rows);
+
+        for (int userId = 1; userId <= users; userId++) {
+            TreeSet<Integer> liked = new TreeSet<>();
+            while (liked.size() < Math.min(likesPerUser, films)) {
+                liked.add((int) Math.min(films, Math.floor(Math.pow(films + 1, random.nextDouble()))));
+            }
+            for (int filmId : liked) {
+                rows.add(new Object[]{filmId, userId});
+            }
+        }
+        insert(jdbcTemplate, "insert into film_likes (film_id, user_id) values (?, ?)", rows);
+        jdbcTemplate.update("update films set likes_count = " +
+                "(select count(*) from film_likes where film_likes.film_id = films.id)");
+
+        for (int userId = 1; userId <= users; userId++) {
+            TreeSet<Integer> friends = new TreeSet<>();
+            while (friends.size() < Math.min(friendsPerUser, users - 1)) {
+                int friendId = random.nextBoolean()
+                        ? Math.floorMod(userId + random.nextInt(200) - 100, users) + 1
+                        : random.nextInt(users) + 1;
+                if (friendId != userId) {
+                    friends.add(friendId);
+                }
+            }
+            for (int friendId : friends) {
+                User.ConnectionType connection = random.nextInt(4) != 0
+                        ? User.ConnectionType.Confirmed
+                        : User.ConnectionType.Unconfirmed;
+                rows.add(new Object[]{userId, friendId, connection.name()});
+            }
+        }
+        insert(jdbcTemplate, "insert into user_friends (user_id, friend_id, connection) values (?, ?, ?)", rows);
+    }
+
+    private static void insert(JdbcTemplate jdbcTemplate, String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(rows.size(), from + BATCH_SIZE)));
+        }
+        rows.clear();
+    }
+}
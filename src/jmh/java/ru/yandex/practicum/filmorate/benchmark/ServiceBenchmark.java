@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сервисы целиком, вместе с кэширующими хранилищами и индексами в памяти.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ServiceBenchmark {
+
+    private FilmService filmService;
+    private UserService userService;
+    private int users;
+
+    @Setup
+    public void setUp(SeededDatabase database) {
+        filmService = database.getBean(FilmService.class);
+        userService = database.getBean(UserService.class);
+        users = database.users;
+    }
+
+    @Benchmark
+    public List<Film> getPopular() {
+        return filmService.getPopular(10);
+    }
+
+    @Benchmark
+    public List<Film> getPopularByGenre() {
+        return filmService.getPopular(10, (long) ThreadLocalRandom.current().nextInt(6) + 1, null);
+    }
+
+    @Benchmark
+    public List<User> getUserFriends() {
+        return userService.getUserFriends(randomUser());
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends() {
+        return userService.getCommonFriends(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public List<User> getFriendSuggestions() {
+        return userService.getFriendSuggestions(randomUser(), 10);
+    }
+
+    @Benchmark
+    public List<Film> getRecommendations() {
+        return filmService.getRecommendations(randomUser(), 10);
+    }
+
+    private long randomUser() {
+        return ThreadLocalRandom.current().nextInt(users) + 1;
+    }
+}
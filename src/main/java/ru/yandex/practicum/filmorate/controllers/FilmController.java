@@ -1,13 +1,28 @@
 package ru.yandex.practicum.filmorate.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmSearchIndex;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/films")
@@ -15,16 +30,48 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FilmController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
-    public List<Film> getFilms() {
-        return filmService.getFilms();
+    public MappingJacksonValue getFilms(@RequestParam(required = false) Long after,
+                                        @RequestParam(required = false) Integer limit,
+                                        @RequestParam(defaultValue = "list") String likes) {
+        if (after == null && limit == null) {
+            return withLikes(filmService.getFilms(), likes);
+        }
+        return withLikes(filmService.getFilms(after == null ? 0 : after, limit == null ? DEFAULT_PAGE_SIZE : limit),
+                likes);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFilms(@RequestParam(defaultValue = "0") long after,
+                                                             @RequestParam(defaultValue = "list") String likes) {
+        Class<?> view = likesView(likes);
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter writer = objectMapper.writerWithView(view)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                    .withRootValueSeparator("\n")
+                    .writeValues(outputStream)) {
+                filmService.forEachFilm(after, film -> {
+                    try {
+                        writer.write(film);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @GetMapping("/{id}")
-    public Film getFilm(@PathVariable long id) {
-        return filmService.getFilmById(id);
+    public MappingJacksonValue getFilm(@PathVariable long id, @RequestParam(defaultValue = "list") String likes) {
+        return withLikes(filmService.getFilmById(id), likes);
     }
 
     @PostMapping
@@ -32,14 +79,45 @@ public class FilmController {
         return filmService.createFilm(film);
     }
 
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<Long> createFilms(@RequestBody List<Film> films) {
+        return filmService.createFilms(films.iterator());
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public List<Long> createFilms(InputStream body) throws IOException {
+        try (NdjsonReader<Film> films = new NdjsonReader<>(objectMapper, Film.class, body)) {
+            return filmService.createFilms(films);
+        }
+    }
+
     @PutMapping
     public Film updateFilm(@Valid @RequestBody Film film) {
         return filmService.updateFilm(film);
     }
 
     @GetMapping("/popular")
-    public List<Film> getPopular(@RequestParam(defaultValue = "10") Integer count) {
-        return filmService.getPopular(count);
+    public MappingJacksonValue getPopular(@RequestParam(defaultValue = "10") Integer count,
+                                          @RequestParam(required = false) Long genreId,
+                                          @RequestParam(required = false) Integer year,
+                                          @RequestParam(defaultValue = "list") String likes) {
+        return withLikes(filmService.getPopular(count, genreId, year), likes);
+    }
+
+    @GetMapping("/search")
+    public MappingJacksonValue searchFilms(@RequestParam String query,
+                                           @RequestParam(defaultValue = "title") Set<String> by,
+                                           @RequestParam(defaultValue = "100") int limit,
+                                           @RequestParam(defaultValue = "list") String likes) {
+        Set<FilmSearchIndex.Field> fields = EnumSet.noneOf(FilmSearchIndex.Field.class);
+        for (String field : by) {
+            try {
+                fields.add(FilmSearchIndex.Field.valueOf(field.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException(String.format("Поиск по полю %s не поддерживается", field));
+            }
+        }
+        return withLikes(filmService.searchFilms(query, fields, limit), likes);
     }
 
     @PutMapping("/{id}/like/{userId}")
@@ -51,4 +129,24 @@ public class FilmController {
     public void dislikeFilm(@PathVariable long id, @PathVariable long userId) {
         filmService.dislikeFilm(id, userId);
     }
+
+    /**
+     * likes=list — фильмы со списком лайков, likes=count — только с их числом в likesCount.
+     */
+    private static MappingJacksonValue withLikes(Object body, String likes) {
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        value.setSerializationView(likesView(likes));
+        return value;
+    }
+
+    private static Class<?> likesView(String likes) {
+        switch (likes.trim().toLowerCase(Locale.ROOT)) {
+            case "list":
+                return Film.Views.Full.class;
+            case "count":
+                return Film.Views.Summary.class;
+            default:
+                throw new ValidationException(String.format("Параметр likes может быть list или count, а не %s", likes));
+        }
+    }
 }
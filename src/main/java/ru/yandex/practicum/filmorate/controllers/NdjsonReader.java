@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Построчное чтение NDJSON из тела запроса. Объекты разбираются по мере перебора,
+ * ошибка разбора становится {@link ValidationException} с номером строки.
+ */
+final class NdjsonReader<T> implements Iterator<T>, Closeable {
+
+    private final MappingIterator<T> values;
+    private int count;
+
+    NdjsonReader(ObjectMapper objectMapper, Class<T> type, InputStream body) throws IOException {
+        this.values = objectMapper.readerFor(type).readValues(body);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            return values.hasNextValue();
+        } catch (IOException e) {
+            throw invalid(e);
+        }
+    }
+
+    @Override
+    public T next() {
+        try {
+            T value = values.nextValue();
+            count++;
+            return value;
+        } catch (IOException e) {
+            throw invalid(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        values.close();
+    }
+
+    private ValidationException invalid(IOException e) {
+        return new ValidationException(String.format("Строка %d: %s", count + 1, e.getMessage()));
+    }
+}
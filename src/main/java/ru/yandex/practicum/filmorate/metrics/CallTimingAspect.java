@@ -0,0 +1,49 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Время каждого вызова хранилищ (методы интерфейсов из storage.dao) и сервисов в таймере filmorate.calls
+ * с метками class, method и exception. Гистограмма включается параметром
+ * management.metrics.distribution.percentiles-histogram.filmorate.calls.
+ */
+@Aspect
+@Component
+public class CallTimingAspect {
+
+    private final MeterRegistry registry;
+
+    /**
+     * Реестр внедряется лениво, чтобы создание аспекта не тянуло за собой всю настройку метрик.
+     */
+    public CallTimingAspect(@Lazy MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("execution(* ru.yandex.practicum.filmorate.storage.dao.*.*(..)) " +
+            "|| within(@org.springframework.stereotype.Service ru.yandex.practicum.filmorate..*)")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(registry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("filmorate.calls")
+                    .description("Вызовы хранилищ и сервисов")
+                    .tag("class", AopUtils.getTargetClass(joinPoint.getTarget()).getSimpleName())
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("exception", exception)
+                    .register(registry));
+        }
+    }
+}
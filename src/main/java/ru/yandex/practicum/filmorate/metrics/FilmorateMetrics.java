@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.service.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.service.FriendGraph;
+import ru.yandex.practicum.filmorate.service.LikeWriteBehindBuffer;
+import ru.yandex.practicum.filmorate.service.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.impl.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.storage.impl.CachingUserStorage;
+import ru.yandex.practicum.filmorate.storage.impl.FilmDbStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Метрики кэшей, индексов в памяти и записи в базу.
+ * Кэши публикуются под стандартными именами cache.* с меткой cache, как у Caffeine в Spring.
+ * Это не MeterBinder: реестр создаёт их раньше хранилищ, а хранилищам через {@link CallTimingAspect} нужен реестр.
+ */
+@Component
+@RequiredArgsConstructor
+public class FilmorateMetrics {
+
+    private final MeterRegistry registry;
+
+    private final CachingFilmStorage filmCache;
+    private final CachingUserStorage userCache;
+    private final FilmDbStorage filmDbStorage;
+    private final PopularityIndex popularityIndex;
+    private final FriendGraph friendGraph;
+    private final FilmSearchIndex searchIndex;
+    private final LikeWriteBehindBuffer likeBuffer;
+
+    @PostConstruct
+    public void bind() {
+        bindCache("films", filmCache::getStats, filmCache::getSize);
+        bindCache("users", userCache::getStats, userCache::getSize);
+
+        FunctionCounter.builder("filmorate.films.rows.written", filmDbStorage, FilmDbStorage::getRowsWritten)
+                .description("Строки films и film_genres, записанные при сохранении фильмов")
+                .register(registry);
+        Gauge.builder("filmorate.popularity.films", popularityIndex, PopularityIndex::getSize)
+                .register(registry);
+        Gauge.builder("filmorate.friends.edges", friendGraph, FriendGraph::getEdgeCount)
+                .register(registry);
+        Gauge.builder("filmorate.friends.delta.users", friendGraph, FriendGraph::getDeltaSize)
+                .description("Пользователи в журнале изменений графа дружбы")
+                .register(registry);
+        Gauge.builder("filmorate.search.terms", searchIndex, FilmSearchIndex::getTermCount)
+                .register(registry);
+        Gauge.builder("filmorate.search.memory", searchIndex, FilmSearchIndex::getMemoryEstimate)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("filmorate.likes.pending", likeBuffer, LikeWriteBehindBuffer::getSize)
+                .description("Незаписанные изменения лайков")
+                .register(registry);
+        FunctionCounter.builder("filmorate.sql.statements", SqlStatistics.class, type -> SqlStatistics.getTotal())
+                .register(registry);
+    }
+
+    /**
+     * Счётчики держатся за этот бин: Micrometer хранит на объект слабую ссылку, и ссылка на метод пропала бы при сборке мусора.
+     */
+    private void bindCache(String name, Supplier<CacheStats> stats, Supplier<Long> size) {
+        cacheCounter("cache.gets", name, "hit", stats, CacheStats::hitCount);
+        cacheCounter("cache.gets", name, "miss", stats, CacheStats::missCount);
+        cacheCounter("cache.evictions", name, null, stats, CacheStats::evictionCount);
+        Gauge.builder("cache.size", this, metrics -> size.get())
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    private void cacheCounter(String meter, String cache, String result, Supplier<CacheStats> stats,
+                              ToDoubleFunction<CacheStats> value) {
+        FunctionCounter.Builder<FilmorateMetrics> builder =
+                FunctionCounter.builder(meter, this, metrics -> value.applyAsDouble(stats.get()))
+                        .tag("cache", cache);
+        if (result != null) {
+            builder.tag("result", result);
+        }
+        builder.register(registry);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Допустимое число SQL-запросов на один HTTP-запрос.
+ * Бюджет отдельного обработчика задаётся как filmorate.sql.budget.statements[GET /films/{id}]=1,
+ * остальным достаётся default-statements; 0 — без ограничения.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "filmorate.sql.budget")
+public class SqlBudgetProperties {
+    /**
+     * Кроме предупреждения в журнале записывать нарушения в {@link SqlBudgetViolations}.
+     * Предназначено для тестов: ответ клиенту к этому моменту уже отправлен и не меняется.
+     */
+    private boolean strict;
+    private int defaultStatements;
+    /**
+     * Сколько раз один и тот же запрос может выполниться за HTTP-запрос, прежде чем это будет считаться N+1.
+     */
+    private int repeatThreshold = 3;
+    private Map<String, Integer> statements = new HashMap<>();
+
+    public int getBudget(String endpoint) {
+        return statements.getOrDefault(endpoint, defaultStatements);
+    }
+}
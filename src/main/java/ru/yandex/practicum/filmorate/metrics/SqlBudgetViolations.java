@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Нарушения SQL-бюджета, записанные {@link SqlStatisticsFilter} в строгом режиме.
+ * Тесты проверяют их после запросов: фильтр срабатывает, когда ответ уже отправлен, и изменить его не может.
+ */
+@Component
+public class SqlBudgetViolations {
+
+    private final List<String> violations = new ArrayList<>();
+
+    public synchronized void record(String message) {
+        violations.add(message);
+    }
+
+    /**
+     * Возвращает накопленные нарушения и очищает список.
+     */
+    public synchronized List<String> drain() {
+        List<String> result = new ArrayList<>(violations);
+        violations.clear();
+        return result;
+    }
+}
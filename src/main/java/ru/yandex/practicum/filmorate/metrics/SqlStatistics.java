@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Счётчик SQL-запросов. Всего запросов считается с запуска приложения,
+ * а между {@link #start()} и {@link #finish()} — ещё запросы, прочитанные строки и повторы запросов
+ * текущего потока, то есть одного HTTP-запроса.
+ */
+public final class SqlStatistics {
+
+    private static final ThreadLocal<SqlStatistics> CURRENT = new ThreadLocal<>();
+    private static final AtomicLong TOTAL = new AtomicLong();
+
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+    private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'|\\b\\d+\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Map<String, Integer> shapes = new HashMap<>();
+    private int statements;
+    private long rows;
+
+    private SqlStatistics() {
+    }
+
+    public static SqlStatistics start() {
+        SqlStatistics statistics = new SqlStatistics();
+        CURRENT.set(statistics);
+        return statistics;
+    }
+
+    public static void finish() {
+        CURRENT.remove();
+    }
+
+    public static long getTotal() {
+        return TOTAL.get();
+    }
+
+    static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    static void statementExecuted(String sql) {
+        TOTAL.incrementAndGet();
+        SqlStatistics statistics = CURRENT.get();
+        if (statistics != null) {
+            statistics.statements++;
+            statistics.shapes.merge(shape(sql), 1, Integer::sum);
+        }
+    }
+
+    static void rowFetched() {
+        SqlStatistics statistics = CURRENT.get();
+        if (statistics != null) {
+            statistics.rows++;
+        }
+    }
+
+    /**
+     * Вид запроса: списки параметров IN (?, ?, ?) сворачиваются в один параметр, литералы заменяются на ?,
+     * так что запросы, отличающиеся только значениями, считаются одинаковыми.
+     */
+    static String shape(String sql) {
+        if (sql == null) {
+            return "";
+        }
+        String shape = LITERAL.matcher(sql).replaceAll("?");
+        shape = PARAMETER_LIST.matcher(shape).replaceAll("?");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Запросы, выполненные не меньше threshold раз, — признак N+1.
+     */
+    public Map<String, Integer> getRepeated(int threshold) {
+        Map<String, Integer> repeated = new LinkedHashMap<>();
+        shapes.forEach((shape, count) -> {
+            if (count >= threshold) {
+                repeated.put(shape, count);
+            }
+        });
+        return repeated;
+    }
+}
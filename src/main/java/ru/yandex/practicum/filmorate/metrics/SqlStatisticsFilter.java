@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Записывает число SQL-запросов и прочитанных строк при обработке HTTP-запроса
+ * в filmorate.http.sql.statements и filmorate.http.sql.rows с метками method, uri и status.
+ * Превышение бюджета из {@link SqlBudgetProperties} и повторы одного запроса (N+1) попадают в журнал
+ * и счётчики filmorate.http.sql.budget.exceeded и filmorate.http.sql.repeated, а в строгом режиме
+ * ещё и в {@link SqlBudgetViolations}, откуда их проверяют тесты. Проверка выполняется после обработчика,
+ * когда ответ обычно уже отправлен, поэтому фильтр ничего не выбрасывает и ответ не меняет.
+ * Запросы из асинхронной выгрузки сюда не попадают.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SqlStatisticsFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry registry;
+    private final SqlBudgetProperties budget;
+    private final SqlBudgetViolations violations;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        SqlStatistics statistics = SqlStatistics.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            SqlStatistics.finish();
+        }
+
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String endpoint = request.getMethod() + " " + (pattern != null ? pattern : "UNKNOWN");
+        Tags tags = Tags.of("method", request.getMethod(),
+                "uri", pattern != null ? pattern.toString() : "UNKNOWN",
+                "status", String.valueOf(response.getStatus()));
+        DistributionSummary.builder("filmorate.http.sql.statements")
+                .description("SQL-запросы на один HTTP-запрос")
+                .tags(tags)
+                .register(registry)
+                .record(statistics.getStatements());
+        DistributionSummary.builder("filmorate.http.sql.rows")
+                .description("Строки, прочитанные из базы за один HTTP-запрос")
+                .tags(tags)
+                .register(registry)
+                .record(statistics.getRows());
+        log.debug("{}: SQL-запросов {}, строк {}", endpoint, statistics.getStatements(), statistics.getRows());
+
+        int limit = budget.getBudget(endpoint);
+        if (limit > 0 && statistics.getStatements() > limit) {
+            registry.counter("filmorate.http.sql.budget.exceeded", tags).increment();
+            violation(String.format("%s: SQL-запросов %d при бюджете %d", endpoint, statistics.getStatements(), limit));
+        }
+        Map<String, Integer> repeated = statistics.getRepeated(budget.getRepeatThreshold());
+        if (!repeated.isEmpty()) {
+            registry.counter("filmorate.http.sql.repeated", tags).increment();
+            violation(String.format("%s: повторяющиеся SQL-запросы %s", endpoint, repeated));
+        }
+    }
+
+    private void violation(String message) {
+        log.warn(message);
+        if (budget.isStrict()) {
+            violations.record(message);
+        }
+    }
+}
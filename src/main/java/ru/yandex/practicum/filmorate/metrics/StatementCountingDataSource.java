@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Источник данных, который учитывает в {@link SqlStatistics} каждый запрос на своих соединениях.
+ * Подготовленный запрос считается при создании, простой — при выполнении; пакетная запись считается одним запросом.
+ * Запросы и результаты оборачиваются для подсчёта строк только внутри HTTP-запроса,
+ * поэтому выгрузки и фоновые задачи чтение строк не замедляет.
+ */
+public class StatementCountingDataSource extends DelegatingDataSource {
+
+    public StatementCountingDataSource(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return counting(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return counting(super.getConnection(username, password));
+    }
+
+    private static Connection counting(Connection connection) {
+        return proxy(Connection.class, connection, (method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("prepare")) {
+                SqlStatistics.statementExecuted((String) args[0]);
+            }
+            Object result = invoke(connection, method, args);
+            if (result instanceof Statement && SqlStatistics.isActive()) {
+                return counting(method.getReturnType(), (Statement) result, !name.startsWith("prepare"));
+            }
+            return result;
+        });
+    }
+
+    private static Object counting(Class<?> type, Statement statement, boolean plain) {
+        return proxy(type, statement, (method, args) -> {
+            String name = method.getName();
+            if (plain && name.startsWith("execute") && args != null && args[0] instanceof String) {
+                SqlStatistics.statementExecuted((String) args[0]);
+            }
+            Object result = invoke(statement, method, args);
+            if (result instanceof ResultSet) {
+                ResultSet resultSet = (ResultSet) result;
+                return proxy(ResultSet.class, resultSet, (rsMethod, rsArgs) -> {
+                    Object value = invoke(resultSet, rsMethod, rsArgs);
+                    if (Boolean.TRUE.equals(value) && rsMethod.getName().equals("next")) {
+                        SqlStatistics.rowFetched();
+                    }
+                    return value;
+                });
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<?> type, Object target, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.handle(method, args));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object handle(Method method, Object[] args) throws Throwable;
+    }
+}
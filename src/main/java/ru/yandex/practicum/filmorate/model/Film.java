@@ -1,7 +1,10 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import ru.yandex.practicum.filmorate.util.SortedLongSet;
 
 import javax.validation.constraints.*;
 import java.time.LocalDate;
@@ -11,11 +14,16 @@ import java.util.concurrent.atomic.AtomicLong;
 
 @Data
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@JsonView(Film.Views.Summary.class)
 public class Film {
     private static AtomicLong FILM_ID = new AtomicLong();
 
     @EqualsAndHashCode.Include
     private long id;
+    /**
+     * Версия для оптимистической блокировки; если в запросе на обновление её нет, проверка не выполняется.
+     */
+    private Long version;
     @NotBlank
     private String name;
     @Size(max=200)
@@ -23,7 +31,11 @@ public class Film {
     private LocalDate releaseDate;
     @Positive
     private int duration;
-    private Set<Long> likes = new HashSet<>();
+    /**
+     * Id лайкнувших пользователей; не выводится в представлении {@link Views.Summary}.
+     */
+    @JsonView(Views.Full.class)
+    private SortedLongSet likes = SortedLongSet.EMPTY;
 
     private Set<Genre> genres = new HashSet<>();
 
@@ -42,11 +54,41 @@ public class Film {
     }
 
     public void like(long id) {
-        likes.add(id);
+        likes = likes.with(id);
     }
 
     public void dislike(long id) {
-        likes.remove(id);
+        likes = likes.without(id);
+    }
+
+    /**
+     * Копия фильма со всеми полями, включая версию. Объект из кэша общий для всех запросов,
+     * поэтому изменения делаются на копии.
+     */
+    public Film copy() {
+        Film result = new Film(name, description, releaseDate, duration, mpa);
+        result.setId(id);
+        result.setVersion(version);
+        result.setLikes(likes);
+        result.setGenres(genres);
+        return result;
+    }
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public int getLikesCount() {
+        return likes.size();
+    }
+
+    /**
+     * Представления для ответа с ?likes=count: в Summary вместо списка лайков только likesCount.
+     * Поля без своей @JsonView берут Summary с уровня класса, как и поля вложенных {@link Genre} и {@link MPA}.
+     */
+    public interface Views {
+        interface Summary {
+        }
+
+        interface Full extends Summary {
+        }
     }
 
 }
@@ -17,6 +17,10 @@ public class User {
 
     @EqualsAndHashCode.Include
     private long id;
+    /**
+     * Версия для оптимистической блокировки; если в запросе на обновление её нет, проверка не выполняется.
+     */
+    private Long version;
     @Email
     @NotBlank
     private String email;
@@ -43,11 +47,28 @@ public class User {
     }
 
     public void addToFriends(Friend friend) {
-        friends.add(friend);
+        Set<Friend> result = new HashSet<>(friends);
+        result.remove(friend);
+        result.add(friend);
+        friends = result;
     }
 
     public void deleteFromFriends(long id) {
-        friends.removeIf(friend -> friend.getUserId() == id);
+        Set<Friend> result = new HashSet<>(friends);
+        result.removeIf(friend -> friend.getFriendId() == id);
+        friends = result;
+    }
+
+    /**
+     * Копия пользователя с тем же набором друзей. Объект из кэша общий для всех запросов,
+     * поэтому изменения делаются на копии.
+     */
+    public User copy() {
+        User result = new User(email, login, name, birthday);
+        result.setId(id);
+        result.setVersion(version);
+        result.setFriends(friends);
+        return result;
     }
 
     @Data
@@ -0,0 +1,168 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.dao.ExportStorage;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Выгрузка данных для аналитики в CSV или NDJSON. Строки пишутся в поток по мере чтения из базы,
+ * поэтому расход памяти не зависит от размера таблиц.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ExportService {
+
+    private final ExportStorage exportStorage;
+    private final ObjectMapper objectMapper;
+
+    public enum Dataset {
+        FILMS("id", "name", "description", "release_date", "duration", "mpa_id", "genre_ids"),
+        LIKES("film_id", "user_id"),
+        FRIENDSHIPS("user_id", "friend_id", "connection");
+
+        private final List<String> columns;
+
+        Dataset(String... columns) {
+            this.columns = List.of(columns);
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+    }
+
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    public void export(Dataset dataset, Format format, OutputStream outputStream) throws IOException {
+        long start = System.currentTimeMillis();
+        RowWriter writer = format == Format.CSV
+                ? new CsvWriter(outputStream, dataset.getColumns())
+                : new NdjsonWriter(outputStream, dataset.getColumns());
+        Consumer<Object[]> consumer = row -> {
+            try {
+                writer.write(row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            switch (dataset) {
+                case FILMS:
+                    exportStorage.exportFilms(consumer);
+                    break;
+                case LIKES:
+                    exportStorage.exportLikes(consumer);
+                    break;
+                case FRIENDSHIPS:
+                    exportStorage.exportFriendships(consumer);
+                    break;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.finish();
+        log.info("Выгрузка {} в {}: строк {}, {} мс", dataset, format, writer.getRows(),
+                System.currentTimeMillis() - start);
+    }
+
+    private abstract static class RowWriter {
+        private long rows;
+
+        void write(Object[] row) throws IOException {
+            writeRow(row);
+            rows++;
+        }
+
+        long getRows() {
+            return rows;
+        }
+
+        abstract void writeRow(Object[] row) throws IOException;
+
+        abstract void finish() throws IOException;
+    }
+
+    private static final class CsvWriter extends RowWriter {
+        private final Writer writer;
+
+        private CsvWriter(OutputStream outputStream, List<String> columns) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 64 * 1024);
+            writer.write(String.join(",", columns));
+            writer.write('\n');
+        }
+
+        @Override
+        void writeRow(Object[] row) throws IOException {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(escape(row[i]));
+            }
+            writer.write('\n');
+        }
+
+        @Override
+        void finish() throws IOException {
+            writer.flush();
+        }
+
+        private static String escape(Object value) {
+            if (value == null) {
+                return "";
+            }
+            String text = value instanceof long[]
+                    ? Arrays.stream((long[]) value).mapToObj(String::valueOf).collect(Collectors.joining(";"))
+                    : value.toString();
+            if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+                return text;
+            }
+            return '"' + text.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    private final class NdjsonWriter extends RowWriter {
+        private final JsonGenerator generator;
+        private final ObjectWriter valueWriter;
+        private final List<String> columns;
+
+        private NdjsonWriter(OutputStream outputStream, List<String> columns) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(outputStream);
+            this.generator.setRootValueSeparator(null);
+            this.valueWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            this.columns = columns;
+        }
+
+        @Override
+        void writeRow(Object[] row) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < row.length; i++) {
+                generator.writeFieldName(columns.get(i));
+                valueWriter.writeValue(generator, row[i]);
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        void finish() throws IOException {
+            generator.flush();
+        }
+    }
+}
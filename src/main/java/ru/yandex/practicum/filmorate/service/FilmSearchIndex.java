@@ -0,0 +1,173 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.util.SortedIntArrays;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Инвертированный индекс по названиям и описаниям фильмов для поиска без LIKE '%...%'.
+ * Текст режется на слова по всему, что не буква и не цифра, приводится к нижнему регистру, «ё» заменяется на «е».
+ * Слова хранятся в отсортированном словаре, поэтому каждое слово запроса ищется как префикс.
+ * Индекс строится при старте постранично из базы и обновляется {@link FilmService} при создании и изменении фильма.
+ */
+@Component
+@Slf4j
+public class FilmSearchIndex {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final FilmStorage filmStorage;
+    private final EnumMap<Field, FieldIndex> fields = new EnumMap<>(Field.class);
+
+    public FilmSearchIndex(FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+        for (Field field : Field.values()) {
+            fields.put(field, new FieldIndex());
+        }
+    }
+
+    public enum Field {
+        TITLE,
+        DESCRIPTION
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        fields.values().forEach(FieldIndex::clear);
+        List<Film> page;
+        long lastId = 0;
+        int count = 0;
+        do {
+            page = filmStorage.findPage(lastId, PAGE_SIZE);
+            for (Film film : page) {
+                index(film);
+                lastId = film.getId();
+            }
+            count += page.size();
+        } while (page.size() == PAGE_SIZE);
+        log.info("Поисковый индекс построен: фильмов {}, слов {}, примерно {} КБ",
+                count, getTermCount(), getMemoryEstimate() / 1024);
+    }
+
+    public void index(Film film) {
+        fields.get(Field.TITLE).index((int) film.getId(), film.getName());
+        fields.get(Field.DESCRIPTION).index((int) film.getId(), film.getDescription());
+    }
+
+    /**
+     * Фильмы, в которых в одном из полей есть все слова запроса (как префиксы).
+     *
+     * @return id фильмов по возрастанию
+     */
+    public long[] search(String query, Set<Field> by) {
+        Set<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return new long[0];
+        }
+        BitSet result = new BitSet();
+        for (Field field : by) {
+            result.or(fields.get(field).search(terms));
+        }
+        return result.stream().asLongStream().toArray();
+    }
+
+    public int getTermCount() {
+        return fields.values().stream().mapToInt(index -> index.postings.size()).sum();
+    }
+
+    /**
+     * Приблизительный объём индекса в куче: строки слов, массивы id и узлы словарей.
+     */
+    public long getMemoryEstimate() {
+        long bytes = 0;
+        for (FieldIndex index : fields.values()) {
+            for (Map.Entry<String, int[]> entry : index.postings.entrySet()) {
+                bytes += 64 + 2L * entry.getKey().length() + 16 + 4L * entry.getValue().length;
+            }
+            for (String[] tokens : index.filmTokens.values()) {
+                bytes += 48 + 16 + 4L * tokens.length;
+            }
+        }
+        return bytes;
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static final class FieldIndex {
+        private final ConcurrentSkipListMap<String, int[]> postings = new ConcurrentSkipListMap<>();
+        private final ConcurrentHashMap<Integer, String[]> filmTokens = new ConcurrentHashMap<>();
+
+        private void clear() {
+            postings.clear();
+            filmTokens.clear();
+        }
+
+        /**
+         * Изменения одного фильма идут под блокировкой его ячейки в filmTokens, поэтому не перемешиваются.
+         */
+        private void index(int filmId, String text) {
+            Set<String> tokens = tokenize(text);
+            filmTokens.compute(filmId, (id, old) -> {
+                if (old != null) {
+                    for (String token : old) {
+                        if (!tokens.contains(token)) {
+                            postings.computeIfPresent(token, (key, ids) -> SortedIntArrays.remove(ids, filmId));
+                        }
+                    }
+                }
+                Set<String> previous = old == null ? Set.of() : Set.of(old);
+                for (String token : tokens) {
+                    if (!previous.contains(token)) {
+                        postings.compute(token, (key, ids) -> SortedIntArrays.insert(ids, filmId));
+                    }
+                }
+                return tokens.toArray(new String[0]);
+            });
+        }
+
+        private BitSet search(Set<String> terms) {
+            BitSet result = null;
+            for (String term : terms) {
+                BitSet matches = new BitSet();
+                for (int[] ids : postings.subMap(term, true, term + Character.MAX_VALUE, true).values()) {
+                    for (int id : ids) {
+                        matches.set(id);
+                    }
+                }
+                if (result == null) {
+                    result = matches;
+                } else {
+                    result.and(matches);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        }
+    }
+}
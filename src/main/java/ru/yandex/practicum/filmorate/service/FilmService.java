@@ -2,14 +2,23 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exceptions.ConflictException;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.util.AfterCommit;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 import java.time.LocalDate;
-import java.util.List;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -20,24 +29,117 @@ import java.util.stream.Collectors;
 @Slf4j
 @RequiredArgsConstructor
 public class FilmService {
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int BATCH_CHUNK_SIZE = 1000;
+
     private final FilmStorage filmStorage;
     private final UserService userService;
+    private final PopularityIndex popularityIndex;
+    private final LikeWriteBehindBuffer likeBuffer;
+    private final LikeIndex likeIndex;
+    private final FilmSearchIndex searchIndex;
+    private final Validator validator;
 
     public List<Film> getFilms() {
-        return filmStorage.findAll();
+        return withPendingLikes(filmStorage.findAll());
+    }
+
+    public List<Film> getFilms(long afterId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Размер страницы должен быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        return withPendingLikes(filmStorage.findPage(afterId, limit));
     }
 
+    public void forEachFilm(long afterId, Consumer<Film> action) {
+        List<Film> page;
+        long lastId = afterId;
+        do {
+            page = filmStorage.findPage(lastId, MAX_PAGE_SIZE);
+            withPendingLikes(page).forEach(action);
+            if (!page.isEmpty()) {
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == MAX_PAGE_SIZE);
+    }
+
+    @Transactional
     public Film createFilm(Film film) {
         validate(film);
-        return filmStorage.save(film);
+        Film created = filmStorage.save(film);
+        AfterCommit.run(() -> {
+            popularityIndex.addFilm(created.getId());
+            searchIndex.index(created);
+        });
+        return created;
     }
 
+    /**
+     * Пакетное добавление фильмов. Фильмы читаются из films по мере обработки и пишутся кусками
+     * по BATCH_CHUNK_SIZE, каждый кусок проверяется целиком и записывается в своей транзакции.
+     * При ошибке уже записанные куски остаются в базе, номер ошибочного фильма есть в сообщении.
+     *
+     * @return id добавленных фильмов в порядке следования
+     */
+    public List<Long> createFilms(Iterator<Film> films) {
+        List<Long> ids = new ArrayList<>();
+        List<Film> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+        while (films.hasNext()) {
+            chunk.add(films.next());
+            if (chunk.size() == BATCH_CHUNK_SIZE || !films.hasNext()) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    validateNew(chunk.get(i), ids.size() + i + 1);
+                }
+                for (Film created : filmStorage.saveAll(chunk)) {
+                    popularityIndex.addFilm(created.getId());
+                    searchIndex.index(created);
+                    ids.add(created.getId());
+                }
+                chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+            }
+        }
+        log.info("Пакетно добавлено фильмов: {}", ids.size());
+        return ids;
+    }
+
+    private void validateNew(Film film, int number) {
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (!violations.isEmpty()) {
+            throw new ValidationException(String.format("Фильм №%d: %s", number, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .collect(Collectors.joining(", "))));
+        }
+        if (film.getId() != 0) {
+            throw new ValidationException(String.format("Фильм №%d: при пакетной загрузке id не указывается", number));
+        }
+        if (film.getReleaseDate() == null || film.getMpa() == null) {
+            throw new ValidationException(String.format("Фильм №%d: не указаны дата релиза или рейтинг", number));
+        }
+        try {
+            validate(film);
+        } catch (ValidationException e) {
+            throw new ValidationException(String.format("Фильм №%d: %s", number, e.getMessage()));
+        }
+    }
+
+    /**
+     * Обновление в одной транзакции. Если фильм изменили параллельно или в запросе устаревшая версия,
+     * выбрасывается {@link ConflictException}.
+     */
+    @Transactional
     public Film updateFilm(Film film) {
         filmStorage.findById(film.getId())
                 .orElseThrow(() -> new NotFoundException(String.format("Фильм с id = %d не найден",film.getId())));
         validate(film);
 
-        return filmStorage.save(film);
+        Film updated;
+        try {
+            updated = filmStorage.save(film);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ConflictException(String.format("Фильм с id = %d был изменён: %s", film.getId(), e.getMessage()));
+        }
+        AfterCommit.run(() -> searchIndex.index(updated));
+        return updated;
     }
 
     private void validate(Film film) {
@@ -49,31 +151,164 @@ public class FilmService {
     public Film getFilmById(long filmId) {
 
         return filmStorage.findById(filmId)
+                .map(likeBuffer::applyPending)
                 .orElseThrow(() -> new NotFoundException(String.format("Фильм с id = %d не найден", filmId)));
     }
 
-    public Film likeFilm(long filmId, long userId) {
-        Film film = getFilmById(filmId);
-        userService.getUserById(userId);
-        if (!film.getLikes().contains((long) userId)) {
-            filmStorage.addLike(film, userId);
+    /**
+     * Ставит лайк одной записью в film_likes, не читая фильм и его лайки.
+     * Существование фильма и пользователя проверяется внешними ключами.
+     * При отложенной записи лайк попадает в {@link LikeWriteBehindBuffer}.
+     *
+     * @return true, если лайка ещё не было
+     */
+    @Transactional
+    public boolean likeFilm(long filmId, long userId) {
+        if (likeBuffer.isEnabled()) {
+            checkFilmExists(filmId);
+            userService.getUserById(userId);
+            boolean changed = likeBuffer.like(filmId, userId);
+            if (changed) {
+                onLiked(filmId, userId);
+            }
+            return changed;
+        }
+        boolean changed;
+        try {
+            changed = filmStorage.addLike(filmId, userId);
+        } catch (DataIntegrityViolationException e) {
+            getFilmById(filmId);
+            userService.getUserById(userId);
+            throw e;
+        }
+        if (changed) {
+            onLiked(filmId, userId);
         }
-        return film;
+        return changed;
     }
 
-    public Film dislikeFilm(long filmId, long userId) {
-        Film film = getFilmById(filmId);
-        userService.getUserById(userId);
-        if (film.getLikes().contains((long) userId)) {
-            filmStorage.deleteLike(film, userId);
+    /**
+     * Удаляет лайк одной записью в film_likes. Фильм и пользователь проверяются
+     * только если удалять было нечего.
+     *
+     * @return true, если лайк был
+     */
+    @Transactional
+    public boolean dislikeFilm(long filmId, long userId) {
+        if (likeBuffer.isEnabled()) {
+            checkFilmExists(filmId);
+            userService.getUserById(userId);
+            boolean changed = likeBuffer.dislike(filmId, userId);
+            if (changed) {
+                onDisliked(filmId, userId);
+            }
+            return changed;
+        }
+        boolean changed = filmStorage.deleteLike(filmId, userId);
+        if (changed) {
+            onDisliked(filmId, userId);
+        } else {
+            getFilmById(filmId);
+            userService.getUserById(userId);
+        }
+        return changed;
+    }
+
+    /**
+     * Для отложенной записи: внешних ключей при постановке в буфер нет, а загружать фильм
+     * со всеми лайками ради проверки не нужно.
+     */
+    private void checkFilmExists(long filmId) {
+        if (!filmStorage.exists(filmId)) {
+            throw new NotFoundException(String.format("Фильм с id = %d не найден", filmId));
         }
-        return film;
+    }
+
+    private void onLiked(long filmId, long userId) {
+        AfterCommit.run(() -> {
+            popularityIndex.like(filmId);
+            likeIndex.like(filmId, userId);
+        });
+    }
+
+    private void onDisliked(long filmId, long userId) {
+        AfterCommit.run(() -> {
+            popularityIndex.dislike(filmId);
+            likeIndex.dislike(filmId, userId);
+        });
     }
 
     public List<Film> getPopular(int count) {
-        return filmStorage.findAll().stream()
-                .sorted((film1, film2) -> Integer.compare(film2.getLikes().size(), film1.getLikes().size()))
-                .limit(count)
+        if (count <= 0 || count > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Количество должно быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        return findInOrder(popularityIndex.getTop(count));
+    }
+
+    /**
+     * Без фильтров рейтинг берётся из {@link PopularityIndex}, с фильтрами — запросом к базе по films.likes_count.
+     */
+    public List<Film> getPopular(int count, Long genreId, Integer year) {
+        if (genreId == null && year == null) {
+            return getPopular(count);
+        }
+        if (count <= 0 || count > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Количество должно быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        if (year != null && (year < 1895 || year > 9999)) {
+            throw new ValidationException("Год должен быть от 1895 до 9999");
+        }
+        return withPendingLikes(filmStorage.findPopular(count, genreId, year));
+    }
+
+    /**
+     * Рекомендации по лайкам пользователей с похожими вкусами, см. {@link LikeIndex#recommend(long, int)}.
+     */
+    public List<Film> getRecommendations(long userId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Количество должно быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        userService.getUserById(userId);
+
+        return findInOrder(Arrays.stream(likeIndex.recommend(userId, limit)).boxed().collect(Collectors.toList()));
+    }
+
+    /**
+     * Поиск по словам запроса в названии и (или) описании через {@link FilmSearchIndex}.
+     * Найденные фильмы упорядочены по убыванию лайков, при равенстве — по возрастанию id.
+     */
+    public List<Film> searchFilms(String query, Set<FilmSearchIndex.Field> by, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Количество должно быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        if (query == null || query.isBlank() || by.isEmpty()) {
+            throw new ValidationException("Не задан поисковый запрос или поля для поиска");
+        }
+        List<Long> ids = Arrays.stream(searchIndex.search(query, by))
+                .boxed()
+                .sorted(Comparator.comparingInt((Long id) -> popularityIndex.getLikes(id)).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(limit)
+                .collect(Collectors.toList());
+        return findInOrder(ids);
+    }
+
+    private List<Film> findInOrder(List<Long> ids) {
+        Map<Long, Film> films = filmStorage.findByIds(ids).stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(likeBuffer::applyPending)
+                .collect(Collectors.toList());
+    }
+
+    private List<Film> withPendingLikes(List<Film> films) {
+        if (likeBuffer.getSize() == 0) {
+            return films;
+        }
+        return films.stream()
+                .map(likeBuffer::applyPending)
                 .collect(Collectors.toList());
     }
 }
@@ -0,0 +1,359 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.dao.UserStorage;
+import ru.yandex.practicum.filmorate.util.IntCounter;
+import ru.yandex.practicum.filmorate.util.TopK;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Граф дружбы в памяти.
+ * Основная часть хранится в формате CSR: для пользователя u его друзья лежат в
+ * {@code friends[offsets[u]..offsets[u + 1])} по возрастанию id, признак подтверждения — в битовой маске.
+ * Пользователи, чей список менялся после последней сборки, хранятся в журнале изменений целиком
+ * и при чтении перекрывают основную часть. Когда журнал вырастает до filmorate.friends.graph.compaction-threshold,
+ * он вливается в новый CSR.
+ * Чтение не блокируется; изменения разных пользователей не блокируют друг друга.
+ */
+@Component
+@Slf4j
+public class FriendGraph {
+
+    private static final int[] NO_FRIENDS = new int[0];
+
+    private final UserStorage userStorage;
+    private final int compactionThreshold;
+    private final ReentrantReadWriteLock compactionLock = new ReentrantReadWriteLock();
+
+    private volatile Adjacency base = Adjacency.EMPTY;
+    private volatile ConcurrentHashMap<Integer, Row> delta = new ConcurrentHashMap<>();
+
+    public FriendGraph(UserStorage userStorage,
+                       @Value("${filmorate.friends.graph.compaction-threshold:4096}") int compactionThreshold) {
+        this.userStorage = userStorage;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    @PostConstruct
+    public void reload() {
+        Builder builder = new Builder();
+        userStorage.forEachFriendship(builder::add);
+        load(builder);
+    }
+
+    /**
+     * Загружает граф из рёбер, отсортированных по пользователю и другу.
+     */
+    public void load(Builder builder) {
+        compactionLock.writeLock().lock();
+        try {
+            base = builder.build();
+            delta = new ConcurrentHashMap<>();
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+        log.debug("Граф дружбы загружен: пользователей {}, связей {}", base.offsets.length - 1, base.friends.length);
+    }
+
+    public long[] getFriends(long userId) {
+        Row row = row(userId);
+        long[] result = new long[row.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = row.friendAt(i);
+        }
+        return result;
+    }
+
+    public int getDegree(long userId) {
+        return row(userId).size();
+    }
+
+    public boolean hasFriend(long userId, long friendId) {
+        return row(userId).indexOf(friendId) >= 0;
+    }
+
+    public boolean isConfirmed(long userId, long friendId) {
+        Row row = row(userId);
+        int index = row.indexOf(friendId);
+        return index >= 0 && row.isConfirmed(index);
+    }
+
+    /**
+     * Дружба взаимна, если каждый из пользователей есть в списке друзей другого.
+     */
+    public boolean areMutualFriends(long userId, long otherId) {
+        return hasFriend(userId, otherId) && hasFriend(otherId, userId);
+    }
+
+    public long[] getCommonFriends(long userId, long otherId) {
+        Row first = row(userId);
+        Row second = row(otherId);
+        long[] result = new long[Math.min(first.size(), second.size())];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.size() && j < second.size()) {
+            int a = first.friendAt(i);
+            int b = second.friendAt(j);
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                result[size++] = a;
+                i++;
+                j++;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Вызывает action для каждого друга пользователя, не создавая массивов.
+     * Дружба считается подтверждённой, если она отмечена как подтверждённая или пользователи добавили друг друга.
+     */
+    public void forEachFriend(long userId, boolean confirmedOnly, FriendConsumer action) {
+        Row row = row(userId);
+        for (int i = 0; i < row.size(); i++) {
+            int friendId = row.friendAt(i);
+            if (!confirmedOnly || row.isConfirmed(i) || row(friendId).indexOf(userId) >= 0) {
+                action.accept(friendId);
+            }
+        }
+    }
+
+    /**
+     * Возможные друзья: пользователи, не входящие в список друзей, по убыванию числа общих подтверждённых друзей.
+     * Счётчики по второму кругу знакомств хранятся в {@link IntCounter}, лучшие limit отбираются кучей {@link TopK}.
+     */
+    public long[] suggestFriends(long userId, int limit) {
+        Row own = row(userId);
+        IntCounter mutual = new IntCounter(own.size() * 16);
+        forEachFriend(userId, true, friendId -> forEachFriend(friendId, true, candidateId -> {
+            if (candidateId != userId && own.indexOf(candidateId) < 0) {
+                mutual.increment(candidateId);
+            }
+        }));
+        TopK top = new TopK(limit);
+        mutual.forEach(top::offer);
+        return top.toSortedIds();
+    }
+
+    public void addFriend(long userId, long friendId, boolean confirmed) {
+        update(userId, row -> row.with((int) friendId, confirmed));
+    }
+
+    public void deleteFriend(long userId, long friendId) {
+        update(userId, row -> row.without((int) friendId));
+    }
+
+    public int getDeltaSize() {
+        return delta.size();
+    }
+
+    public long getEdgeCount() {
+        long count = base.friends.length;
+        Adjacency adjacency = base;
+        for (Row row : delta.values()) {
+            count += row.size() - adjacency.row(row.userId).size();
+        }
+        return count;
+    }
+
+    private Row row(long userId) {
+        Row row = delta.get((int) userId);
+        return row != null ? row : base.row((int) userId);
+    }
+
+    private void update(long userId, UnaryOperator<Row> change) {
+        compactionLock.readLock().lock();
+        try {
+            delta.compute((int) userId, (id, row) -> change.apply(row != null ? row : base.row(id)));
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+        if (delta.size() >= compactionThreshold) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        if (!compactionLock.writeLock().tryLock()) {
+            return;
+        }
+        try {
+            if (delta.size() < compactionThreshold) {
+                return;
+            }
+            Adjacency current = base;
+            Builder builder = new Builder();
+            int maxUser = current.offsets.length - 2;
+            for (int id : delta.keySet()) {
+                maxUser = Math.max(maxUser, id);
+            }
+            for (int userId = 0; userId <= maxUser; userId++) {
+                Row row = row(userId);
+                for (int i = 0; i < row.size(); i++) {
+                    builder.add(userId, row.friendAt(i), row.isConfirmed(i));
+                }
+            }
+            base = builder.build();
+            delta = new ConcurrentHashMap<>();
+            log.debug("Журнал изменений графа дружбы влит в основную часть: связей {}", base.friends.length);
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+    }
+
+    @FunctionalInterface
+    public interface FriendConsumer {
+        void accept(int friendId);
+    }
+
+    /**
+     * Собирает CSR из рёбер, которые добавляются по возрастанию пользователя, а внутри — по возрастанию друга.
+     */
+    public static final class Builder {
+        private int[] users = new int[1024];
+        private int[] friends = new int[1024];
+        private final BitSet confirmed = new BitSet();
+        private int size;
+
+        public void add(long userId, long friendId, boolean isConfirmed) {
+            if (size == users.length) {
+                users = Arrays.copyOf(users, size * 2);
+                friends = Arrays.copyOf(friends, size * 2);
+            }
+            users[size] = (int) userId;
+            friends[size] = (int) friendId;
+            if (isConfirmed) {
+                confirmed.set(size);
+            }
+            size++;
+        }
+
+        private Adjacency build() {
+            int maxUser = size == 0 ? -1 : users[size - 1];
+            int[] offsets = new int[maxUser + 2];
+            for (int i = 0; i < size; i++) {
+                offsets[users[i] + 1]++;
+            }
+            for (int i = 1; i < offsets.length; i++) {
+                offsets[i] += offsets[i - 1];
+            }
+            return new Adjacency(offsets, Arrays.copyOf(friends, size), (BitSet) confirmed.clone());
+        }
+    }
+
+    private static final class Adjacency {
+        private static final Adjacency EMPTY = new Adjacency(new int[1], NO_FRIENDS, new BitSet());
+
+        private final int[] offsets;
+        private final int[] friends;
+        private final BitSet confirmed;
+
+        private Adjacency(int[] offsets, int[] friends, BitSet confirmed) {
+            this.offsets = offsets;
+            this.friends = friends;
+            this.confirmed = confirmed;
+        }
+
+        private Row row(int userId) {
+            if (userId < 0 || userId >= offsets.length - 1) {
+                return new Row(userId, NO_FRIENDS, 0, 0, confirmed);
+            }
+            return new Row(userId, friends, offsets[userId], offsets[userId + 1], confirmed);
+        }
+    }
+
+    /**
+     * Список друзей одного пользователя: отрезок общего массива или отдельный массив из журнала.
+     */
+    private static final class Row {
+        private final int userId;
+        private final int[] friends;
+        private final int from;
+        private final int to;
+        private final BitSet confirmed;
+
+        private Row(int userId, int[] friends, int from, int to, BitSet confirmed) {
+            this.userId = userId;
+            this.friends = friends;
+            this.from = from;
+            this.to = to;
+            this.confirmed = confirmed;
+        }
+
+        private int size() {
+            return to - from;
+        }
+
+        private int friendAt(int index) {
+            return friends[from + index];
+        }
+
+        private boolean isConfirmed(int index) {
+            return confirmed.get(from + index);
+        }
+
+        private int indexOf(long friendId) {
+            if (friendId < Integer.MIN_VALUE || friendId > Integer.MAX_VALUE) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(friends, from, to, (int) friendId);
+            return index >= 0 ? index - from : -1;
+        }
+
+        private Row with(int friendId, boolean isConfirmed) {
+            int index = Arrays.binarySearch(friends, from, to, friendId);
+            int size = size();
+            int[] ids;
+            BitSet bits = new BitSet(size + 1);
+            if (index >= 0) {
+                ids = Arrays.copyOfRange(friends, from, to);
+                for (int i = 0; i < size; i++) {
+                    bits.set(i, isConfirmed(i));
+                }
+                bits.set(index - from, isConfirmed);
+                return new Row(userId, ids, 0, size, bits);
+            }
+            int position = -index - 1 - from;
+            ids = new int[size + 1];
+            System.arraycopy(friends, from, ids, 0, position);
+            ids[position] = friendId;
+            System.arraycopy(friends, from + position, ids, position + 1, size - position);
+            for (int i = 0; i < size; i++) {
+                bits.set(i < position ? i : i + 1, isConfirmed(i));
+            }
+            bits.set(position, isConfirmed);
+            return new Row(userId, ids, 0, size + 1, bits);
+        }
+
+        private Row without(int friendId) {
+            int index = Arrays.binarySearch(friends, from, to, friendId);
+            if (index < 0) {
+                return this;
+            }
+            int position = index - from;
+            int size = size();
+            int[] ids = new int[size - 1];
+            System.arraycopy(friends, from, ids, 0, position);
+            System.arraycopy(friends, index + 1, ids, position, size - position - 1);
+            BitSet bits = new BitSet(size - 1);
+            for (int i = 0; i < size; i++) {
+                if (i != position) {
+                    bits.set(i < position ? i : i - 1, isConfirmed(i));
+                }
+            }
+            return new Row(userId, ids, 0, size - 1, bits);
+        }
+    }
+}
@@ -1,27 +1,59 @@
 package ru.yandex.practicum.filmorate.service;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.dao.GenreStorage;
+import ru.yandex.practicum.filmorate.util.IdDictionary;
 
+import javax.annotation.PostConstruct;
 import java.util.List;
 
+/**
+ * Справочник жанров. Загружается из базы один раз при старте и хранится в {@link IdDictionary}.
+ * После изменения таблицы genres справочник нужно перечитать методом {@link #refresh()}.
+ */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class GenreService {
 
-    private final GenreStorage genreStorage;
+    private final IdDictionary<Genre> dictionary;
+
+    public GenreService(GenreStorage genreStorage,
+                        @Value("${filmorate.dictionaries.refresh-interval-ms:10000}") long refreshIntervalMs) {
+        this.dictionary = new IdDictionary<>("жанров", genreStorage::findAll, Genre::getId, refreshIntervalMs);
+    }
+
+    @PostConstruct
+    public void refresh() {
+        dictionary.refresh();
+    }
 
     public List<Genre> getGenres() {
-        return genreStorage.findAll();
+        return dictionary.getAll();
+    }
+
+    public Genre getGenreById(long genreId) {
+        Genre genre = dictionary.get(genreId);
+        if (genre == null) {
+            throw new NotFoundException(String.format("Жанр с id = %d не найден", genreId));
+        }
+        return genre;
     }
 
-    public Genre getGenreById(int genreId) {
-        return genreStorage.findById(genreId)
-                .orElseThrow(() -> new NotFoundException(String.format("Жанр с id = %d не найден", genreId)));
+    /**
+     * Возвращает жанр из справочника. Если жанра нет, справочник перечитывается, но не чаще раза
+     * в filmorate.dictionaries.refresh-interval-ms, чтобы строки с неизвестным id не перечитывали его при каждом чтении.
+     * Если жанра нет и после этого, выбрасывается {@link NotFoundException}.
+     */
+    public Genre resolve(long genreId) {
+        Genre genre = dictionary.resolve(genreId);
+        if (genre == null) {
+            log.error("Жанра с id = {} нет в справочнике", genreId);
+            throw new NotFoundException(String.format("Жанр с id = %d не найден", genreId));
+        }
+        return genre;
     }
 }
@@ -0,0 +1,318 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.util.IntCounter;
+import ru.yandex.practicum.filmorate.util.SortedIntArrays;
+import ru.yandex.practicum.filmorate.util.TopK;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Лайки в памяти в обе стороны: пользователь → фильмы и фильм → пользователи. Списки — отсортированные int[]
+ * в массивах, индексированных по id, без упаковки ключей.
+ * Строится при старте из film_likes и обновляется {@link FilmService} после фиксации каждого изменившегося лайка,
+ * так что рекомендации не перечитывают таблицу. При отложенной записи лайк попадает сюда, когда он принят
+ * в {@link LikeWriteBehindBuffer}, а не когда буфер записан в базу.
+ * Изменения приходят после фиксации транзакций и могут применяться не в том порядке, в котором
+ * транзакции фиксировались, поэтому раз в filmorate.recommendations.rebuild-interval-ms индекс
+ * перестраивается из базы.
+ * <p>
+ * Списки копируются при каждом изменении, поэтому лайк популярного фильма стоит O(число лайкнувших),
+ * зато чтение не блокируется. Матрица пересечений пользователей не хранится: она занимала бы
+ * O(пользователей²) памяти, и каждый лайк всё равно обходил бы всех лайкнувших фильм.
+ * Пересечения считаются в {@link #recommend(long, int)} только по фильмам самого пользователя.
+ */
+@Component
+@Slf4j
+public class LikeIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final FilmStorage filmStorage;
+    private final LikeWriteBehindBuffer likeBuffer;
+    private final int neighbours;
+    private final int maxFilmLikers;
+    private final long rebuildIntervalMs;
+    private final ReentrantReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    private volatile IdTable userFilms = new IdTable(0);
+    private volatile IdTable filmUsers = new IdTable(0);
+    private volatile Queue<FilmLike> journal;
+    private ScheduledExecutorService scheduler;
+
+    public LikeIndex(FilmStorage filmStorage, LikeWriteBehindBuffer likeBuffer,
+                     @Value("${filmorate.recommendations.neighbours:20}") int neighbours,
+                     @Value("${filmorate.recommendations.max-film-likers:1000}") int maxFilmLikers,
+                     @Value("${filmorate.recommendations.rebuild-interval-ms:600000}") long rebuildIntervalMs) {
+        this.filmStorage = filmStorage;
+        this.likeBuffer = likeBuffer;
+        this.neighbours = neighbours;
+        this.maxFilmLikers = maxFilmLikers;
+        this.rebuildIntervalMs = rebuildIntervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        rebuild();
+        if (rebuildIntervalMs > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "like-index-rebuild");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::rebuildQuietly, rebuildIntervalMs, rebuildIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Перестраивает индекс из film_likes, не останавливая обновления. Пары, которые менялись
+     * во время чтения таблицы, перепроверяются по базе, затем поверх накладываются ещё не записанные лайки
+     * из {@link LikeWriteBehindBuffer}.
+     */
+    public synchronized void rebuild() {
+        journal = new ConcurrentLinkedQueue<>();
+        try {
+            Builder builder = new Builder();
+            filmStorage.forEachLike(builder::add);
+            rebuildLock.writeLock().lock();
+            try {
+                load(builder);
+                Set<FilmLike> changed = new LinkedHashSet<>(journal);
+                journal = null;
+                for (FilmLike like : changed) {
+                    set(like.getFilmId(), like.getUserId(), filmStorage.isLiked(like.getFilmId(), like.getUserId()));
+                }
+                if (likeBuffer != null) {
+                    likeBuffer.forEachPending((like, liked) -> set(like.getFilmId(), like.getUserId(), liked));
+                }
+            } finally {
+                rebuildLock.writeLock().unlock();
+            }
+        } finally {
+            journal = null;
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.error("Ошибка перестроения индекса лайков", e);
+        }
+    }
+
+    public void load(Builder builder) {
+        userFilms = builder.group(true);
+        filmUsers = builder.group(false);
+        log.debug("Индекс лайков построен: пользователей {}, фильмов {}, лайков {}",
+                userFilms.size(), filmUsers.size(), builder.size);
+    }
+
+    public void like(long filmId, long userId) {
+        apply(filmId, userId, true);
+    }
+
+    public void dislike(long filmId, long userId) {
+        apply(filmId, userId, false);
+    }
+
+    private void apply(long filmId, long userId, boolean liked) {
+        rebuildLock.readLock().lock();
+        try {
+            Queue<FilmLike> changes = journal;
+            if (changes != null) {
+                changes.add(new FilmLike(filmId, userId));
+            }
+            set(filmId, userId, liked);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    private void set(long filmId, long userId, boolean liked) {
+        if (liked) {
+            userFilms.insert((int) userId, (int) filmId);
+            filmUsers.insert((int) filmId, (int) userId);
+        } else {
+            userFilms.remove((int) userId, (int) filmId);
+            filmUsers.remove((int) filmId, (int) userId);
+        }
+    }
+
+    public int[] getFilms(long userId) {
+        return userFilms.get((int) userId).clone();
+    }
+
+    /**
+     * Рекомендации: берутся neighbours пользователей с наибольшим числом общих лайков,
+     * их фильмы, которых нет у пользователя, ранжируются по сумме пересечений лайкнувших.
+     * У очень популярных фильмов при поиске похожих просматривается равномерная выборка из maxFilmLikers
+     * лайкнувших: такие фильмы мало говорят о вкусе, а время ответа определяли бы они.
+     *
+     * @return id фильмов по убыванию веса
+     */
+    public long[] recommend(long userId, int limit) {
+        int user = (int) userId;
+        int[] own = userFilms.get(user);
+        if (own.length == 0) {
+            return new long[0];
+        }
+
+        IntCounter overlap = new IntCounter(64);
+        for (int filmId : own) {
+            int[] likers = filmUsers.get(filmId);
+            int step = Math.max(1, likers.length / maxFilmLikers);
+            for (int i = 0; i < likers.length; i += step) {
+                if (likers[i] != user) {
+                    overlap.increment(likers[i]);
+                }
+            }
+        }
+        TopK similar = new TopK(neighbours);
+        overlap.forEach(similar::offer);
+
+        IntCounter scores = new IntCounter(64);
+        for (long otherId : similar.toSortedIds()) {
+            int weight = overlap.get((int) otherId);
+            for (int filmId : userFilms.get((int) otherId)) {
+                if (Arrays.binarySearch(own, filmId) < 0) {
+                    scores.add(filmId, weight);
+                }
+            }
+        }
+        TopK top = new TopK(limit);
+        scores.forEach(top::offer);
+        return top.toSortedIds();
+    }
+
+    /**
+     * Копит пары (фильм, пользователь) в порядке чтения и раскладывает их по спискам сортировкой.
+     */
+    public static final class Builder {
+        private long[] pairs = new long[1024];
+        private int size;
+
+        public void add(long filmId, long userId) {
+            if (size == pairs.length) {
+                pairs = Arrays.copyOf(pairs, size * 2);
+            }
+            pairs[size++] = filmId << 32 | userId;
+        }
+
+        private IdTable group(boolean byUser) {
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                long filmId = pairs[i] >>> 32;
+                long userId = pairs[i] & 0xFFFFFFFFL;
+                keys[i] = byUser ? userId << 32 | filmId : pairs[i];
+            }
+            Arrays.sort(keys);
+            IdTable result = new IdTable(size == 0 ? 0 : (int) (keys[size - 1] >>> 32) + 1);
+            int from = 0;
+            while (from < size) {
+                int key = (int) (keys[from] >>> 32);
+                int to = from;
+                while (to < size && (int) (keys[to] >>> 32) == key) {
+                    to++;
+                }
+                int[] ids = new int[to - from];
+                int count = 0;
+                for (int i = from; i < to; i++) {
+                    int id = (int) keys[i];
+                    if (count == 0 || ids[count - 1] != id) {
+                        ids[count++] = id;
+                    }
+                }
+                result.put(key, count == ids.length ? ids : Arrays.copyOf(ids, count));
+                from = to;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Списки id, индексированные по неотрицательному id владельца. Опубликованный список не меняется:
+     * изменения выполняются копированием под блокировкой таблицы, чтение не блокируется.
+     */
+    private static final class IdTable {
+        private volatile AtomicReferenceArray<int[]> rows;
+        private int size;
+
+        private IdTable(int capacity) {
+            rows = new AtomicReferenceArray<>(Math.max(capacity, 16));
+        }
+
+        private int[] get(int id) {
+            AtomicReferenceArray<int[]> current = rows;
+            int[] row = id >= 0 && id < current.length() ? current.get(id) : null;
+            return row == null ? EMPTY : row;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private synchronized void put(int id, int[] ids) {
+            ensureCapacity(id);
+            if (rows.getAndSet(id, ids) == null) {
+                size++;
+            }
+        }
+
+        private synchronized void insert(int id, int value) {
+            ensureCapacity(id);
+            int[] old = rows.get(id);
+            rows.set(id, SortedIntArrays.insert(old, value));
+            if (old == null) {
+                size++;
+            }
+        }
+
+        private synchronized void remove(int id, int value) {
+            int[] old = id >= 0 && id < rows.length() ? rows.get(id) : null;
+            if (old == null) {
+                return;
+            }
+            int[] next = SortedIntArrays.remove(old, value);
+            rows.set(id, next);
+            if (next == null) {
+                size--;
+            }
+        }
+
+        private void ensureCapacity(int id) {
+            AtomicReferenceArray<int[]> current = rows;
+            if (id < current.length()) {
+                return;
+            }
+            AtomicReferenceArray<int[]> grown = new AtomicReferenceArray<>(Math.max(id + 1, current.length() * 2));
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            rows = grown;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Отложенная запись лайков (filmorate.likes.write-behind.enabled).
+ * Лайки и их отмены копятся в памяти, последнее действие пользователя над фильмом замещает предыдущее,
+ * и пачками записываются в film_likes по достижении batch-size или раз в flush-interval-ms.
+ * Когда в очереди capacity неподтверждённых изменений, запрос дожидается записи. Запись всегда идёт
+ * в потоке likes-write-behind в собственных транзакциях, а не в транзакции запроса:
+ * иначе при её откате записанные изменения пропали бы вместе с очередью.
+ * Изменения, которые не удалось записать из-за временной ошибки, остаются в очереди.
+ * Пока изменение не записано, чтения видят его через {@link #applyPending(Film)}.
+ */
+@Component
+@Slf4j
+public class LikeWriteBehindBuffer {
+
+    private final FilmStorage filmStorage;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMs;
+
+    private final ConcurrentHashMap<Long, PendingLikes> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private ScheduledExecutorService scheduler;
+
+    public LikeWriteBehindBuffer(FilmStorage filmStorage,
+                                 @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                                 @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity,
+                                 @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+                                 @Value("${filmorate.likes.write-behind.flush-interval-ms:200}") long flushIntervalMs) {
+        this.filmStorage = filmStorage;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "likes-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Включена отложенная запись лайков: batch-size = {}, capacity = {}", batchSize, capacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(flushIntervalMs * 10, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (size.get() > 0) {
+            log.error("При остановке не записано изменений лайков: {}", size.get());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public boolean like(long filmId, long userId) {
+        return enqueue(filmId, userId, true);
+    }
+
+    public boolean dislike(long filmId, long userId) {
+        return enqueue(filmId, userId, false);
+    }
+
+    public boolean hasPending(long filmId) {
+        PendingLikes likes = pending.get(filmId);
+        return likes != null && !likes.snapshot().isEmpty();
+    }
+
+    /**
+     * Перебирает незаписанные изменения: лайк и true, если лайк поставлен, false — если снят.
+     */
+    public void forEachPending(BiConsumer<FilmLike, Boolean> action) {
+        for (PendingLikes likes : pending.values()) {
+            likes.snapshot().forEach((userId, liked) -> action.accept(new FilmLike(likes.filmId, userId), liked));
+        }
+    }
+
+    /**
+     * Возвращает фильм с учётом ещё не записанных лайков. Исходный объект не изменяется.
+     */
+    public Film applyPending(Film film) {
+        PendingLikes likes = pending.get(film.getId());
+        if (likes == null) {
+            return film;
+        }
+        Map<Long, Boolean> snapshot = likes.snapshot();
+        if (snapshot.isEmpty()) {
+            return film;
+        }
+        Film result = film.copy();
+        long[] added = new long[snapshot.size()];
+        long[] removed = new long[snapshot.size()];
+        int addedCount = 0;
+        int removedCount = 0;
+        for (Map.Entry<Long, Boolean> entry : snapshot.entrySet()) {
+            if (entry.getValue()) {
+                added[addedCount++] = entry.getKey();
+            } else {
+                removed[removedCount++] = entry.getKey();
+            }
+        }
+        result.setLikes(film.getLikes()
+                .with(Arrays.copyOf(added, addedCount))
+                .without(Arrays.copyOf(removed, removedCount)));
+        return result;
+    }
+
+    /**
+     * @return число записанных изменений
+     */
+    public int flush() {
+        flushLock.lock();
+        try {
+            int written = 0;
+            while (size.get() > 0) {
+                int batch = flushBatch();
+                if (batch == 0) {
+                    break;
+                }
+                written += batch;
+            }
+            return written;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private boolean enqueue(long filmId, long userId, boolean liked) {
+        while (size.get() >= capacity) {
+            log.debug("Очередь лайков заполнена, ожидание записи");
+            if (awaitFlush() == 0) {
+                throw new DataAccessResourceFailureException("Очередь лайков заполнена, а запись в базу не удаётся");
+            }
+        }
+        while (true) {
+            PendingLikes likes = pending.computeIfAbsent(filmId, PendingLikes::new);
+            Boolean changed = likes.put(userId, liked);
+            if (changed != null) {
+                if (size.get() >= batchSize && scheduler != null) {
+                    scheduler.execute(this::flushQuietly);
+                }
+                return changed;
+            }
+        }
+    }
+
+    private int awaitFlush() {
+        try {
+            return scheduler.submit(this::flush).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessResourceFailureException("Ожидание записи лайков прервано", e);
+        } catch (ExecutionException e) {
+            throw new DataAccessResourceFailureException("Ошибка отложенной записи лайков", e.getCause());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка отложенной записи лайков", e);
+        }
+    }
+
+    private int flushBatch() {
+        Map<FilmLike, Boolean> batch = new LinkedHashMap<>();
+        for (PendingLikes likes : pending.values()) {
+            likes.snapshot().forEach((userId, liked) -> batch.put(new FilmLike(likes.filmId, userId), liked));
+            if (batch.size() >= batchSize) {
+                break;
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        List<FilmLike> added = new ArrayList<>();
+        List<FilmLike> removed = new ArrayList<>();
+        batch.forEach((like, liked) -> (liked ? added : removed).add(like));
+        try {
+            filmStorage.saveLikes(added, removed);
+        } catch (DataAccessException e) {
+            log.warn("Пакетная запись лайков не удалась, запись по одному: {}", e.getMessage());
+            batch.entrySet().removeIf(entry -> !saveOne(entry.getKey(), entry.getValue()));
+        }
+
+        batch.forEach((like, liked) -> {
+            PendingLikes likes = pending.get(like.getFilmId());
+            if (likes != null) {
+                likes.remove(like.getUserId(), liked);
+            }
+        });
+        log.debug("Записано изменений лайков: {}", batch.size());
+        return batch.size();
+    }
+
+    /**
+     * @return false, если изменение нужно оставить в очереди и повторить позже
+     */
+    private boolean saveOne(FilmLike like, boolean liked) {
+        try {
+            if (liked) {
+                filmStorage.addLike(like.getFilmId(), like.getUserId());
+            } else {
+                filmStorage.deleteLike(like.getFilmId(), like.getUserId());
+            }
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            log.error("Изменение лайка {} отброшено: {}", like, e.getMessage());
+            return true;
+        } catch (DataAccessException e) {
+            log.warn("Изменение лайка {} не записано и останется в очереди: {}", like, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Незаписанные изменения одного фильма. Все операции выполняются под монитором объекта,
+     * так что очереди разных фильмов друг другу не мешают.
+     */
+    private final class PendingLikes {
+        private final long filmId;
+        private final Map<Long, Boolean> likes = new HashMap<>();
+        private long removals;
+        private boolean retired;
+
+        private PendingLikes(long filmId) {
+            this.filmId = filmId;
+        }
+
+        /**
+         * @return изменилось ли состояние лайка или null, если очередь фильма уже выведена из работы
+         */
+        private Boolean put(long userId, boolean liked) {
+            while (true) {
+                Boolean current;
+                long seenRemovals;
+                synchronized (this) {
+                    if (retired) {
+                        return null;
+                    }
+                    current = likes.get(userId);
+                    seenRemovals = removals;
+                }
+                // запрос к базе вне монитора, чтобы не задерживать остальных пользователей этого фильма
+                boolean stored = current != null ? current : filmStorage.isLiked(filmId, userId);
+                synchronized (this) {
+                    if (retired) {
+                        return null;
+                    }
+                    Boolean latest = likes.get(userId);
+                    if (latest != null) {
+                        stored = latest;
+                    } else if (removals != seenRemovals) {
+                        continue;
+                    }
+                    if (stored == liked) {
+                        return false;
+                    }
+                    if (likes.put(userId, liked) == null) {
+                        size.incrementAndGet();
+                    }
+                    return true;
+                }
+            }
+        }
+
+        private synchronized Map<Long, Boolean> snapshot() {
+            return new HashMap<>(likes);
+        }
+
+        private synchronized void remove(long userId, boolean liked) {
+            if (likes.remove(userId, liked)) {
+                size.decrementAndGet();
+                removals++;
+            }
+            if (likes.isEmpty()) {
+                retired = true;
+                pending.remove(filmId, this);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+
+/**
+ * Сверяет счётчик films.likes_count с таблицей film_likes при старте приложения.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class LikesCountRepairJob {
+
+    private final FilmStorage filmStorage;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void repair() {
+        log.debug("Проверка счётчиков лайков фильмов");
+        filmStorage.recalculateLikesCount();
+    }
+}
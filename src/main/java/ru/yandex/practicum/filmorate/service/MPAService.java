@@ -1,27 +1,59 @@
 package ru.yandex.practicum.filmorate.service;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.MPA;
 import ru.yandex.practicum.filmorate.storage.dao.MPAStorage;
+import ru.yandex.practicum.filmorate.util.IdDictionary;
 
+import javax.annotation.PostConstruct;
 import java.util.List;
 
+/**
+ * Справочник рейтингов MPA. Загружается из базы один раз при старте и хранится в {@link IdDictionary}.
+ * После изменения таблицы ratings_mpa справочник нужно перечитать методом {@link #refresh()}.
+ */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class MPAService {
 
-    private final MPAStorage mpaStorage;
+    private final IdDictionary<MPA> dictionary;
+
+    public MPAService(MPAStorage mpaStorage,
+                      @Value("${filmorate.dictionaries.refresh-interval-ms:10000}") long refreshIntervalMs) {
+        this.dictionary = new IdDictionary<>("рейтингов MPA", mpaStorage::findAll, MPA::getId, refreshIntervalMs);
+    }
+
+    @PostConstruct
+    public void refresh() {
+        dictionary.refresh();
+    }
 
     public List<MPA> getMPA() {
-        return mpaStorage.findAll();
+        return dictionary.getAll();
+    }
+
+    public MPA getMPAById(long ratingId) {
+        MPA mpa = dictionary.get(ratingId);
+        if (mpa == null) {
+            throw new NotFoundException(String.format("Рейтинг с id = %d не найден", ratingId));
+        }
+        return mpa;
     }
 
-    public MPA getMPAById(int ratingId) {
-        return mpaStorage.findById(ratingId)
-                .orElseThrow(() -> new NotFoundException(String.format("Рейтинг с id = %d не найден", ratingId)));
+    /**
+     * Возвращает рейтинг из справочника. Если рейтинга нет, справочник перечитывается, но не чаще раза
+     * в filmorate.dictionaries.refresh-interval-ms, чтобы строки с неизвестным id не перечитывали его при каждом чтении.
+     * Если рейтинга нет и после этого, выбрасывается {@link NotFoundException}.
+     */
+    public MPA resolve(long ratingId) {
+        MPA mpa = dictionary.resolve(ratingId);
+        if (mpa == null) {
+            log.error("Рейтинга с id = {} нет в справочнике", ratingId);
+            throw new NotFoundException(String.format("Рейтинг с id = %d не найден", ratingId));
+        }
+        return mpa;
     }
 }
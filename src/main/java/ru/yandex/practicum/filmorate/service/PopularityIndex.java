@@ -0,0 +1,220 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Рейтинг фильмов по количеству лайков, который хранится в памяти.
+ * Упорядочен по убыванию лайков, при равенстве — по возрастанию id.
+ * Изменения одного фильма выполняются под блокировкой его ячейки в {@link ConcurrentHashMap},
+ * поэтому лайки разных фильмов не блокируют друг друга, а чтение рейтинга не блокируется вовсе.
+ * Изменения приходят после фиксации транзакций и могут применяться не в том порядке, в котором
+ * транзакции фиксировались, поэтому раз в filmorate.popularity.reconcile-interval-ms рейтинг
+ * сверяется с films.likes_count методом {@link #reconcile()}.
+ */
+@Component
+@Slf4j
+public class PopularityIndex {
+
+    private final FilmStorage filmStorage;
+    private final LikeWriteBehindBuffer likeBuffer;
+    private final long reconcileIntervalMs;
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>();
+    private volatile Set<Long> touched;
+    private ScheduledExecutorService scheduler;
+
+    public PopularityIndex(FilmStorage filmStorage, LikeWriteBehindBuffer likeBuffer,
+                           @Value("${filmorate.popularity.reconcile-interval-ms:60000}") long reconcileIntervalMs) {
+        this.filmStorage = filmStorage;
+        this.likeBuffer = likeBuffer;
+        this.reconcileIntervalMs = reconcileIntervalMs;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Long, Integer> counts = filmStorage.findLikesCounts();
+        entries.clear();
+        ranking.clear();
+        counts.forEach((filmId, likes) -> update(filmId, old -> likes));
+        log.debug("Рейтинг популярности загружен, фильмов: {}", counts.size());
+        if (reconcileIntervalMs > 0 && scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "popularity-reconcile");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::reconcileQuietly, reconcileIntervalMs, reconcileIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public void addFilm(long filmId) {
+        update(filmId, old -> old);
+    }
+
+    public void like(long filmId) {
+        markTouched(filmId);
+        update(filmId, old -> old + 1);
+    }
+
+    public void dislike(long filmId) {
+        markTouched(filmId);
+        update(filmId, old -> Math.max(old - 1, 0));
+    }
+
+    public int getLikes(long filmId) {
+        Entry entry = entries.get(filmId);
+        return entry == null ? 0 : entry.likes;
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public List<Long> getTop(int count) {
+        List<Long> result = new ArrayList<>(Math.min(count, entries.size()));
+        Set<Long> seen = new HashSet<>();
+        // во время обновления фильм может на мгновение встретиться в рейтинге дважды
+        for (Entry entry : ranking) {
+            if (result.size() >= count) {
+                break;
+            }
+            if (seen.add(entry.filmId)) {
+                result.add(entry.filmId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Сравнивает рейтинг со счётчиком films.likes_count. Сам счётчик сверяет с film_likes {@link LikesCountRepairJob}.
+     *
+     * @return фильмы, у которых количество лайков в памяти расходится с базой: id -> {в памяти, в базе}
+     */
+    public Map<Long, int[]> checkConsistency() {
+        Map<Long, int[]> mismatches = new HashMap<>();
+        Map<Long, Integer> counts = filmStorage.findLikesCounts();
+        counts.forEach((filmId, likes) -> {
+            int indexed = getLikes(filmId);
+            if (indexed != likes || !entries.containsKey(filmId)) {
+                mismatches.put(filmId, new int[]{indexed, likes});
+            }
+        });
+        entries.keySet().stream()
+                .filter(filmId -> !counts.containsKey(filmId))
+                .forEach(filmId -> mismatches.put(filmId, new int[]{getLikes(filmId), 0}));
+        if (!mismatches.isEmpty()) {
+            log.warn("Рейтинг популярности расходится с базой у {} фильмов", mismatches.size());
+        }
+        return mismatches;
+    }
+
+    /**
+     * Исправляет расхождения, записывая в рейтинг количество лайков из films.likes_count.
+     * Фильмы, чьи лайки менялись во время сверки или ещё не записаны из {@link LikeWriteBehindBuffer},
+     * пропускаются до следующей сверки: для них значение из базы может быть уже устаревшим.
+     *
+     * @return число исправленных фильмов
+     */
+    public int reconcile() {
+        Set<Long> changed = ConcurrentHashMap.newKeySet();
+        touched = changed;
+        try {
+            int fixed = 0;
+            for (Map.Entry<Long, int[]> mismatch : checkConsistency().entrySet()) {
+                long filmId = mismatch.getKey();
+                int likes = mismatch.getValue()[1];
+                if (changed.contains(filmId) || likeBuffer.hasPending(filmId)) {
+                    continue;
+                }
+                update(filmId, old -> likes);
+                fixed++;
+            }
+            if (fixed > 0) {
+                log.info("Рейтинг популярности сверен с базой, исправлено фильмов: {}", fixed);
+            }
+            return fixed;
+        } finally {
+            touched = null;
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.error("Ошибка сверки рейтинга популярности", e);
+        }
+    }
+
+    private void markTouched(long filmId) {
+        Set<Long> changed = touched;
+        if (changed != null) {
+            changed.add(filmId);
+        }
+    }
+
+    private void update(long filmId, IntUnaryOperator likes) {
+        entries.compute(filmId, (id, old) -> {
+            Entry next = new Entry(id, likes.applyAsInt(old == null ? 0 : old.likes));
+            ranking.add(next);
+            if (old != null && !old.equals(next)) {
+                ranking.remove(old);
+            }
+            return next;
+        });
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final long filmId;
+        private final int likes;
+
+        private Entry(long filmId, int likes) {
+            this.filmId = filmId;
+            this.likes = likes;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = Integer.compare(other.likes, likes);
+            return result != 0 ? result : Long.compare(filmId, other.filmId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry entry = (Entry) o;
+            return filmId == entry.filmId && likes == entry.likes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filmId, likes);
+        }
+    }
+}
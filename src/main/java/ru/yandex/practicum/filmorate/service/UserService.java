@@ -2,13 +2,20 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exceptions.ConflictException;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.dao.UserStorage;
+import ru.yandex.practicum.filmorate.util.AfterCommit;
 
-import java.util.List;
-import java.util.Set;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -19,76 +26,185 @@ import java.util.stream.Collectors;
 @Slf4j
 @RequiredArgsConstructor
 public class UserService {
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int BATCH_CHUNK_SIZE = 1000;
 
     private final UserStorage userStorage;
+    private final FriendGraph friendGraph;
+    private final Validator validator;
 
     public List<User> getUsers() {
         return userStorage.findAll();
     }
 
+    public List<User> getUsers(long afterId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Размер страницы должен быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        return userStorage.findPage(afterId, limit);
+    }
+
+    public void forEachUser(long afterId, Consumer<User> action) {
+        List<User> page;
+        long lastId = afterId;
+        do {
+            page = userStorage.findPage(lastId, MAX_PAGE_SIZE);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == MAX_PAGE_SIZE);
+    }
+
     public User getUserById(long userId) {
         return userStorage.findById(userId)
                 .orElseThrow(() -> new NotFoundException(String.format("Пользователь с id = %d не найден",userId)));
     }
 
+    @Transactional
     public User createUser(User user) {
         return userStorage.save(user);
     }
 
+    /**
+     * Пакетное добавление пользователей кусками по BATCH_CHUNK_SIZE, см. {@link FilmService#createFilms(Iterator)}.
+     *
+     * @return id добавленных пользователей в порядке следования
+     */
+    public List<Long> createUsers(Iterator<User> users) {
+        List<Long> ids = new ArrayList<>();
+        List<User> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+        while (users.hasNext()) {
+            chunk.add(users.next());
+            if (chunk.size() == BATCH_CHUNK_SIZE || !users.hasNext()) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    validateNew(chunk.get(i), ids.size() + i + 1);
+                }
+                for (User created : userStorage.saveAll(chunk)) {
+                    ids.add(created.getId());
+                }
+                chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+            }
+        }
+        log.info("Пакетно добавлено пользователей: {}", ids.size());
+        return ids;
+    }
+
+    private void validateNew(User user, int number) {
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            throw new ValidationException(String.format("Пользователь №%d: %s", number, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .collect(Collectors.joining(", "))));
+        }
+        if (user.getId() != 0) {
+            throw new ValidationException(String.format("Пользователь №%d: при пакетной загрузке id не указывается",
+                    number));
+        }
+        if (user.getBirthday() == null) {
+            throw new ValidationException(String.format("Пользователь №%d: не указана дата рождения", number));
+        }
+    }
+
+    /**
+     * Если в запросе устаревшая версия пользователя, выбрасывается {@link ConflictException}.
+     */
+    @Transactional
     public User updateUser(User user) {
         userStorage.findById(user.getId())
                 .orElseThrow(() -> new NotFoundException(String.format("Пользователь с id = %d не найден",user.getId())));
 
-        return userStorage.save(user);
+        try {
+            return userStorage.save(user);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ConflictException(e.getMessage());
+        }
     }
 
+    /**
+     * Связи с друзьями идемпотентны и не версионируются: версия пользователя относится только к его полям.
+     * Была ли связь, решает число строк, изменённых в этой транзакции, а не {@link FriendGraph},
+     * который обновляется после фиксации. Пользователь из кэша не изменяется, возвращается его копия.
+     */
+    @Transactional
     public User addUserToFriends(long userId, long otherUserId) {
         User user = getUserById(userId);
-        User otherUser = getUserById(otherUserId);
-        if (user.getFriends().stream().noneMatch(friend -> friend.getFriendId() == otherUserId)) {
-            User.Friend friend = new User.Friend(userId, otherUserId, User.ConnectionType.Unconfirmed);
-            userStorage.addFriend(user, friend);
+        getUserById(otherUserId);
+        User.Friend friend = new User.Friend(userId, otherUserId, User.ConnectionType.Unconfirmed);
+        if (!userStorage.addFriend(userId, friend)) {
+            return user;
         }
-        return user;
+        AfterCommit.run(() -> friendGraph.addFriend(userId, otherUserId, false));
+        User result = user.copy();
+        result.addToFriends(friend);
+        return result;
     }
 
+    @Transactional
     public User confirmUserAsFriend(long userId, long otherUserId) {
         User user = getUserById(userId);
-        User otherUser = getUserById(otherUserId);
-        if (user.getFriends().stream().anyMatch(friend -> friend.getFriendId() == otherUserId)) {
-            User.Friend friend = new User.Friend(userId, otherUserId, User.ConnectionType.Confirmed);
-            userStorage.updateFriend(user, friend);
+        getUserById(otherUserId);
+        User.Friend friend = new User.Friend(userId, otherUserId, User.ConnectionType.Confirmed);
+        if (!userStorage.updateFriend(userId, friend)) {
+            return user;
         }
-        return user;
+        AfterCommit.run(() -> friendGraph.addFriend(userId, otherUserId, true));
+        User result = user.copy();
+        result.addToFriends(friend);
+        return result;
     }
 
+    @Transactional
     public User deleteUserFromFriends(long userId, long otherUserId) {
         User user = getUserById(userId);
         getUserById(otherUserId);
-        if (user.getFriends().stream().anyMatch(friend -> friend.getFriendId() == otherUserId)) {
-            userStorage.deleteFriend(user, otherUserId);
+        if (!userStorage.deleteFriend(userId, otherUserId)) {
+            return user;
         }
-        return user;
+        AfterCommit.run(() -> friendGraph.deleteFriend(userId, otherUserId));
+        User result = user.copy();
+        result.deleteFromFriends(otherUserId);
+        return result;
     }
 
     public List<User> getUserFriends(long userId) {
-        User user = getUserById(userId);
-        return userStorage.findById(user.getFriends().stream()
-                .map(User.Friend::getFriendId)
-                .collect(Collectors.toSet()));
+        getUserById(userId);
+        return findSortedById(friendGraph.getFriends(userId));
     }
 
     public List<User> getCommonFriends(long userId, long otherId) {
-        User user      = getUserById(userId);
-        User otherUser = getUserById(otherId);
+        getUserById(userId);
+        getUserById(otherId);
 
-        Set<Long> intersection = user.getFriends().stream()
-                .map(User.Friend::getFriendId)
-                .collect(Collectors.toSet());
-        intersection.retainAll(otherUser.getFriends().stream()
-                .map(User.Friend::getFriendId)
-                .collect(Collectors.toSet()));
+        return findSortedById(friendGraph.getCommonFriends(userId, otherId));
+    }
 
-        return userStorage.findById(intersection);
+    public List<User> getFriendSuggestions(long userId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Количество должно быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        getUserById(userId);
+
+        long[] ids = friendGraph.suggestFriends(userId, limit);
+        Map<Long, Integer> positions = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            positions.put(ids[i], i);
+        }
+        List<User> users = findSortedById(ids);
+        users.sort(Comparator.comparingInt(user -> positions.get(user.getId())));
+        return users;
+    }
+
+    private List<User> findSortedById(long[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        Set<Long> idSet = new HashSet<>(ids.length * 2);
+        for (long id : ids) {
+            idSet.add(id);
+        }
+        List<User> users = userStorage.findById(idSet);
+        users.sort(Comparator.comparingLong(User::getId));
+        return users;
     }
 }
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import java.util.function.Consumer;
+
+/**
+ * Потоковая выгрузка таблиц: строки передаются в consumer по одной прямо из курсора.
+ */
+public interface ExportStorage {
+
+    /**
+     * id, name, description, release_date, duration, mpa_id, genre_ids (long[]).
+     */
+    void exportFilms(Consumer<Object[]> consumer);
+
+    /**
+     * film_id, user_id.
+     */
+    void exportLikes(Consumer<Object[]> consumer);
+
+    /**
+     * user_id, friend_id, connection.
+     */
+    void exportFriendships(Consumer<Object[]> consumer);
+}
@@ -1,8 +1,11 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -13,12 +16,49 @@ public interface FilmStorage {
 
     Film save(Film film);
 
+    /**
+     * Добавляет новые фильмы пакетом в одной транзакции и проставляет им id в исходном порядке.
+     */
+    List<Film> saveAll(List<Film> films);
+
     List<Film> findAll();
 
+    List<Film> findPage(long afterId, int limit);
+
     Optional<Film> findById(long id);
 
-    void addLike(Film film, long userId);
+    List<Film> findByIds(Collection<Long> ids);
+
+    /**
+     * Проверяет, что фильм есть, не читая его жанры и лайки.
+     */
+    boolean exists(long id);
+
+    /**
+     * Самые популярные фильмы по числу лайков, фильтры genreId и year необязательны.
+     */
+    List<Film> findPopular(int count, Long genreId, Integer year);
+
+    boolean addLike(long filmId, long userId);
+
+    boolean deleteLike(long filmId, long userId);
+
+    boolean isLiked(long filmId, long userId);
+
+    void saveLikes(Collection<FilmLike> added, Collection<FilmLike> removed);
+
+    void recalculateLikesCount();
+
+    /**
+     * Счётчики films.likes_count всех фильмов без обращения к film_likes;
+     * расхождение счётчика с film_likes исправляет {@link #recalculateLikesCount()}.
+     */
+    Map<Long, Integer> findLikesCounts();
 
-    void deleteLike(Film film, long userId);
+    void forEachLike(LikeConsumer consumer);
 
+    @FunctionalInterface
+    interface LikeConsumer {
+        void accept(long filmId, long userId);
+    }
 }
@@ -14,15 +14,50 @@ public interface UserStorage {
 
     User save(User user);
 
+    /**
+     * Добавляет новых пользователей пакетом в одной транзакции и проставляет им id в исходном порядке.
+     */
+    List<User> saveAll(List<User> users);
+
     List<User> findAll();
 
+    List<User> findPage(long afterId, int limit);
+
     Optional<User> findById(long id);
 
     List<User> findById(Set<Long> ids);
 
-    User addFriend(User user, User.Friend friend);
-
-    User updateFriend(User user, User.Friend friend);
-
-    User deleteFriend(User user, long friendId);
+    /**
+     * Общие друзья из хранилища, отсортированные по id. Сервис берёт их из FriendGraph в памяти,
+     * а этот путь читает user_friends напрямую.
+     */
+    List<User> findCommonFriends(long userId, long otherId);
+
+    /**
+     * Связи в user_friends идемпотентны и не версионируются; изменилось ли что-то, видно по числу строк
+     * в текущей транзакции.
+     *
+     * @return true, если связи ещё не было
+     */
+    boolean addFriend(long userId, User.Friend friend);
+
+    /**
+     * @return true, если связь есть и её тип записан
+     */
+    boolean updateFriend(long userId, User.Friend friend);
+
+    /**
+     * @return true, если связь была
+     */
+    boolean deleteFriend(long userId, long friendId);
+
+    /**
+     * Перебирает все связи user_friends по возрастанию user_id, а внутри — friend_id.
+     */
+    void forEachFriendship(FriendshipConsumer consumer);
+
+    @FunctionalInterface
+    interface FriendshipConsumer {
+        void accept(long userId, long friendId, boolean confirmed);
+    }
 }
@@ -0,0 +1,153 @@
+package ru.yandex.practicum.filmorate.storage.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.util.AfterCommit;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш фильмов поверх {@link FilmDbStorage}.
+ * Фильм попадает в кэш при чтении по id и удаляется из него при любом изменении
+ * самого фильма или его лайков. Вытеснение — W-TinyLFU (Caffeine), размер ограничен
+ * параметром filmorate.cache.films.maximum-size.
+ */
+@Repository
+@Slf4j
+@Primary
+public class CachingFilmStorage implements FilmStorage {
+
+    private final FilmStorage filmStorage;
+    private final Cache<Long, Film> films;
+
+    public CachingFilmStorage(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                              @Value("${filmorate.cache.films.maximum-size:10000}") long maximumSize) {
+        this.filmStorage = filmStorage;
+        this.films = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Film save(Film film) {
+        Film saved = filmStorage.save(film);
+        invalidate(saved.getId());
+        return saved;
+    }
+
+    @Override
+    public List<Film> saveAll(List<Film> films) {
+        return filmStorage.saveAll(films);
+    }
+
+    @Override
+    public List<Film> findAll() {
+        return filmStorage.findAll();
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        return filmStorage.findPage(afterId, limit);
+    }
+
+    @Override
+    public Optional<Film> findById(long id) {
+        return Optional.ofNullable(films.get(id, key -> filmStorage.findById(key).orElse(null)));
+    }
+
+    @Override
+    public List<Film> findByIds(Collection<Long> ids) {
+        return new ArrayList<>(films.getAll(ids, missing -> filmStorage.findByIds(toCollection(missing)).stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()))).values());
+    }
+
+    @Override
+    public boolean exists(long id) {
+        return films.getIfPresent(id) != null || filmStorage.exists(id);
+    }
+
+    @Override
+    public List<Film> findPopular(int count, Long genreId, Integer year) {
+        return filmStorage.findPopular(count, genreId, year);
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        boolean changed = filmStorage.addLike(filmId, userId);
+        if (changed) {
+            invalidate(filmId);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean deleteLike(long filmId, long userId) {
+        boolean changed = filmStorage.deleteLike(filmId, userId);
+        if (changed) {
+            invalidate(filmId);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean isLiked(long filmId, long userId) {
+        return filmStorage.isLiked(filmId, userId);
+    }
+
+    @Override
+    public void saveLikes(Collection<FilmLike> added, Collection<FilmLike> removed) {
+        filmStorage.saveLikes(added, removed);
+        added.forEach(like -> invalidate(like.getFilmId()));
+        removed.forEach(like -> invalidate(like.getFilmId()));
+    }
+
+    @Override
+    public void recalculateLikesCount() {
+        filmStorage.recalculateLikesCount();
+    }
+
+    @Override
+    public Map<Long, Integer> findLikesCounts() {
+        return filmStorage.findLikesCounts();
+    }
+
+    @Override
+    public void forEachLike(LikeConsumer consumer) {
+        filmStorage.forEachLike(consumer);
+    }
+
+    /**
+     * Запись удаляется сразу и ещё раз после фиксации транзакции: иначе параллельное чтение
+     * могло бы вернуть в кэш состояние, которое было до этой транзакции.
+     */
+    private void invalidate(long id) {
+        films.invalidate(id);
+        AfterCommit.run(() -> films.invalidate(id));
+    }
+
+    public CacheStats getStats() {
+        return films.stats();
+    }
+
+    public long getSize() {
+        return films.estimatedSize();
+    }
+
+    private static Collection<Long> toCollection(Iterable<? extends Long> ids) {
+        List<Long> result = new ArrayList<>();
+        ids.forEach(result::add);
+        return result;
+    }
+}
@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.storage.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.UserStorage;
+import ru.yandex.practicum.filmorate.util.AfterCommit;
+import ru.yandex.practicum.filmorate.util.SortedLongArrays;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш пользователей вместе с их друзьями поверх {@link UserDbStorage}.
+ * Пользователь удаляется из кэша при изменении его данных или списка друзей,
+ * размер ограничен параметром filmorate.cache.users.maximum-size.
+ */
+@Repository
+@Slf4j
+@Primary
+public class CachingUserStorage implements UserStorage {
+
+    private final UserStorage userStorage;
+    private final Cache<Long, User> users;
+
+    public CachingUserStorage(@Qualifier("userDbStorage") UserStorage userStorage,
+                              @Value("${filmorate.cache.users.maximum-size:10000}") long maximumSize) {
+        this.userStorage = userStorage;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public User save(User user) {
+        User saved = userStorage.save(user);
+        invalidate(saved.getId());
+        return saved;
+    }
+
+    @Override
+    public List<User> saveAll(List<User> users) {
+        return userStorage.saveAll(users);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return userStorage.findAll();
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        return userStorage.findPage(afterId, limit);
+    }
+
+    @Override
+    public Optional<User> findById(long id) {
+        return Optional.ofNullable(users.get(id, key -> userStorage.findById(key).orElse(null)));
+    }
+
+    @Override
+    public List<User> findById(Set<Long> ids) {
+        return new ArrayList<>(users.getAll(ids, missing -> userStorage.findById(toSet(missing)).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()))).values());
+    }
+
+    /**
+     * Если оба пользователя уже в кэше, общие друзья считаются в памяти пересечением
+     * отсортированных массивов id, иначе — одним запросом в базе.
+     */
+    @Override
+    public List<User> findCommonFriends(long userId, long otherId) {
+        User user = users.getIfPresent(userId);
+        User otherUser = users.getIfPresent(otherId);
+        if (user == null || otherUser == null) {
+            return userStorage.findCommonFriends(userId, otherId);
+        }
+        long[] common = SortedLongArrays.intersect(friendIds(user), friendIds(otherUser));
+        if (common.length == 0) {
+            return new ArrayList<>();
+        }
+        Set<Long> ids = new HashSet<>(common.length * 2);
+        for (long id : common) {
+            ids.add(id);
+        }
+        List<User> result = findById(ids);
+        result.sort(Comparator.comparingLong(User::getId));
+        return result;
+    }
+
+    @Override
+    public boolean addFriend(long userId, User.Friend friend) {
+        boolean changed = userStorage.addFriend(userId, friend);
+        if (changed) {
+            invalidate(userId);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean updateFriend(long userId, User.Friend friend) {
+        boolean changed = userStorage.updateFriend(userId, friend);
+        if (changed) {
+            invalidate(userId);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean deleteFriend(long userId, long friendId) {
+        boolean changed = userStorage.deleteFriend(userId, friendId);
+        if (changed) {
+            invalidate(userId);
+        }
+        return changed;
+    }
+
+    @Override
+    public void forEachFriendship(FriendshipConsumer consumer) {
+        userStorage.forEachFriendship(consumer);
+    }
+
+    /**
+     * Запись удаляется сразу и ещё раз после фиксации транзакции: иначе параллельное чтение
+     * могло бы вернуть в кэш состояние, которое было до этой транзакции.
+     */
+    private void invalidate(long id) {
+        users.invalidate(id);
+        AfterCommit.run(() -> users.invalidate(id));
+    }
+
+    public CacheStats getStats() {
+        return users.stats();
+    }
+
+    public long getSize() {
+        return users.estimatedSize();
+    }
+
+    private static long[] friendIds(User user) {
+        long[] ids = new long[user.getFriends().size()];
+        int size = 0;
+        for (User.Friend friend : user.getFriends()) {
+            ids[size++] = friend.getFriendId();
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static Set<Long> toSet(Iterable<? extends Long> ids) {
+        Set<Long> result = new HashSet<>();
+        ids.forEach(result::add);
+        return result;
+    }
+}
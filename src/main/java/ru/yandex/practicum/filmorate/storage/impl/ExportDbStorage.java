@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.storage.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.storage.dao.ExportStorage;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Выгрузка через отдельный {@link JdbcTemplate} с fetch size из filmorate.export.fetch-size,
+ * чтобы драйвер не держал в памяти всю выборку.
+ */
+@Repository
+@Slf4j
+public class ExportDbStorage implements ExportStorage {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ExportDbStorage(DataSource dataSource,
+                           @Value("${filmorate.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    @Override
+    public void exportFilms(Consumer<Object[]> consumer) {
+
+        String sqlQuery = "select films.id, films.name, films.description, films.release_date, films.duration, " +
+                "films.rating_mpa, " +
+                "(select array_agg(film_genres.genre_id order by film_genres.genre_id) from film_genres " +
+                "where film_genres.film_id = films.id) as genre_ids " +
+                "from films order by films.id";
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) rs -> consumer.accept(new Object[]{
+                rs.getLong(1),
+                rs.getString(2),
+                rs.getString(3),
+                rs.getDate(4) == null ? null : rs.getDate(4).toLocalDate(),
+                rs.getInt(5),
+                rs.getObject(6, Long.class),
+                toLongs(rs.getArray(7))
+        }));
+    }
+
+    @Override
+    public void exportLikes(Consumer<Object[]> consumer) {
+
+        String sqlQuery = "select film_id, user_id from film_likes order by film_id, user_id";
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) rs -> consumer.accept(new Object[]{
+                rs.getLong(1),
+                rs.getLong(2)
+        }));
+    }
+
+    @Override
+    public void exportFriendships(Consumer<Object[]> consumer) {
+
+        String sqlQuery = "select user_id, friend_id, connection from user_friends order by user_id, friend_id";
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) rs -> consumer.accept(new Object[]{
+                rs.getLong(1),
+                rs.getLong(2),
+                rs.getString(3)
+        }));
+    }
+
+    private static long[] toLongs(Array array) throws SQLException {
+        if (array == null) {
+            return new long[0];
+        }
+        try {
+            Object[] values = (Object[]) array.getArray();
+            long[] result = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                result[i] = ((Number) values[i]).longValue();
+            }
+            return result;
+        } finally {
+            array.free();
+        }
+    }
+}
@@ -1,36 +1,73 @@
 package ru.yandex.practicum.filmorate.storage.impl;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.annotation.Primary;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.MPAService;
 import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.util.LongGroups;
+import ru.yandex.practicum.filmorate.util.SortedLongSet;
 
+import java.sql.Array;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Repository
 @Slf4j
-@Primary
 public class FilmDbStorage implements FilmStorage {
 
+    private static final String FILM_SELECT_COLUMNS = "select films.id, films.name, films.description, " +
+            "films.release_date, films.duration, films.rating_mpa, films.version";
+
+    private static final String FILM_SELECT = FILM_SELECT_COLUMNS + " from films ";
+
+    private static final String HYDRATED_FILM_SELECT = FILM_SELECT_COLUMNS + ", " +
+            "(select array_agg(film_genres.genre_id order by film_genres.genre_id) from film_genres " +
+            "where film_genres.film_id = films.id) as genre_ids, " +
+            "(select array_agg(film_likes.user_id order by film_likes.user_id) from film_likes " +
+            "where film_likes.film_id = films.id) as like_ids " +
+            "from films ";
+
     JdbcTemplate jdbcTemplate;
+    private final GenreService genreService;
+    private final MPAService mpaService;
+    private final AtomicLong rowsWritten = new AtomicLong();
 
-    public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, GenreService genreService, MPAService mpaService) {
         this.jdbcTemplate = jdbcTemplate;
+        this.genreService = genreService;
+        this.mpaService = mpaService;
     }
+
+    /**
+     * При обновлении сначала читается сохранённое состояние фильма: поля films перезаписываются,
+     * только если изменилось хотя бы одно из них, а в film_genres пишется лишь разница жанров.
+     * Каждое изменение, в том числе только жанров, увеличивает версию фильма: при изменении одних жанров
+     * в films обновляется лишь колонка version, иначе параллельное изменение жанров не было бы обнаружено.
+     * Если в фильме указана версия и она не совпадает с сохранённой,
+     * или фильм успели изменить между чтением и записью, выбрасывается {@link OptimisticLockingFailureException}.
+     */
     @Override
+    @Transactional
     public Film save(Film film) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
 
@@ -49,151 +86,412 @@ public class FilmDbStorage implements FilmStorage {
                 stmt.setLong(5, film.getMpa().getId());
                 return stmt;
             }, keyHolder);
+            rowsWritten.incrementAndGet();
 
             film.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+            film.setVersion(0L);
+            updateGenres(film.getId(), Set.of(), genreIds(film));
 
         } else {
-            log.debug("Обновлен фильм: {}", film);
+            String sqlQuery = FILM_SELECT_COLUMNS + ", " +
+                    "(select array_agg(film_genres.genre_id) from film_genres " +
+                    "where film_genres.film_id = films.id) as genre_ids " +
+                    "from films where films.id = ?";
+            Set<Long> storedGenres = new HashSet<>();
+            List<Film> stored = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> {
+                for (Object genreId : toArray(rs.getArray("genre_ids"))) {
+                    storedGenres.add(((Number) genreId).longValue());
+                }
+                return mapRowToFilm(rs, rowNum);
+            }, film.getId());
+            if (stored.isEmpty()) {
+                log.debug("Фильм с id = {} не найден, обновлять нечего", film.getId());
+                return film;
+            }
 
-            String sqlQuery = "update films set name = ?, description = ?, release_date = ?, duration = ?, rating_mpa = ? " +
-                    "where films.id = ?";
+            long storedVersion = stored.get(0).getVersion();
+            if (film.getVersion() != null && film.getVersion() != storedVersion) {
+                throw new OptimisticLockingFailureException(String.format(
+                        "Версия фильма с id = %d: %d, в запросе: %d", film.getId(), storedVersion, film.getVersion()));
+            }
+            Set<Long> requestedGenres = genreIds(film);
+            boolean sameColumns = sameColumns(stored.get(0), film);
+            if (sameColumns && storedGenres.equals(requestedGenres)) {
+                log.debug("Фильм с id = {} не изменился", film.getId());
+                film.setVersion(storedVersion);
+                return film;
+            }
 
-            jdbcTemplate.update(sqlQuery,
-                    film.getName(),
-                    film.getDescription(),
-                    film.getReleaseDate(),
-                    film.getDuration(),
-                    film.getMpa().getId(),
-                    film.getId());
-        }
+            int updated;
+            if (sameColumns) {
+                log.debug("У фильма с id = {} изменились только жанры", film.getId());
 
-        updateGenres(film);
+                sqlQuery = "update films set version = version + 1 where films.id = ? and films.version = ?";
+                updated = jdbcTemplate.update(sqlQuery, film.getId(), storedVersion);
+            } else {
+                log.debug("Обновлен фильм: {}", film);
+
+                sqlQuery = "update films set name = ?, description = ?, release_date = ?, duration = ?, " +
+                        "rating_mpa = ?, version = version + 1 where films.id = ? and films.version = ?";
+                updated = jdbcTemplate.update(sqlQuery,
+                        film.getName(),
+                        film.getDescription(),
+                        film.getReleaseDate(),
+                        film.getDuration(),
+                        film.getMpa().getId(),
+                        film.getId(),
+                        storedVersion);
+            }
+            if (updated == 0) {
+                throw new OptimisticLockingFailureException(String.format(
+                        "Фильм с id = %d изменён параллельным запросом", film.getId()));
+            }
+            rowsWritten.addAndGet(updated);
+            film.setVersion(storedVersion + 1);
+            updateGenres(film.getId(), storedGenres, requestedGenres);
+        }
 
         return film;
     }
 
-    private void updateGenres(Film film) {
+    @Override
+    @Transactional
+    public List<Film> saveAll(List<Film> films) {
+
+        String sqlQuery = "insert into films(name, description, release_date, duration, rating_mpa) " +
+                "values (?, ?, ?, ?, ?)";
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"id"})) {
+                for (Film film : films) {
+                    stmt.setString(1, film.getName());
+                    stmt.setString(2, film.getDescription());
+                    stmt.setTimestamp(3, Timestamp.valueOf(film.getReleaseDate().atStartOfDay()));
+                    stmt.setInt(4, film.getDuration());
+                    stmt.setLong(5, film.getMpa().getId());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                GeneratedKeys.assign(stmt, films, Film::setId);
+                films.forEach(film -> film.setVersion(0L));
+            }
+            return null;
+        });
+
+        List<Object[]> genres = new ArrayList<>();
+        for (Film film : films) {
+            for (Genre genre : film.getGenres()) {
+                genres.add(new Object[]{film.getId(), genre.getId()});
+            }
+        }
+        if (!genres.isEmpty()) {
+            jdbcTemplate.batchUpdate("insert into film_genres (film_id, genre_id) values(?,?)", genres);
+        }
+        log.debug("Добавлено фильмов пакетом: {}, жанров: {}", films.size(), genres.size());
+
+        return films;
+    }
+
+    /**
+     * Количество строк, записанных в films и film_genres методом save.
+     */
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    private static boolean sameColumns(Film stored, Film film) {
+        return Objects.equals(stored.getName(), film.getName())
+                && Objects.equals(stored.getDescription(), film.getDescription())
+                && Objects.equals(stored.getReleaseDate(), film.getReleaseDate())
+                && stored.getDuration() == film.getDuration()
+                && stored.getMpa() != null && stored.getMpa().getId() == film.getMpa().getId();
+    }
 
-        String sqlQueryDelete = "delete from film_genres where film_id = ?";
-        jdbcTemplate.update(sqlQueryDelete, film.getId());
+    private static Set<Long> genreIds(Film film) {
+        return film.getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toSet());
+    }
 
-        if (film.getGenres().size() > 0) {
-            Iterator<Genre> iter = film.getGenres().iterator();
+    private void updateGenres(long filmId, Set<Long> stored, Set<Long> requested) {
 
+        List<Object[]> removed = new ArrayList<>();
+        for (Long genreId : stored) {
+            if (!requested.contains(genreId)) {
+                removed.add(new Object[]{filmId, genreId});
+            }
+        }
+        List<Object[]> added = new ArrayList<>();
+        for (Long genreId : requested) {
+            if (!stored.contains(genreId)) {
+                added.add(new Object[]{filmId, genreId});
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            String sqlQueryDelete = "delete from film_genres where film_id = ? and genre_id = ?";
+            rowsWritten.addAndGet(sum(jdbcTemplate.batchUpdate(sqlQueryDelete, removed)));
+        }
+        if (!added.isEmpty()) {
             String sqlQueryInsert = "insert into film_genres (film_id, genre_id) values(?,?)";
-            jdbcTemplate.batchUpdate(
-                    sqlQueryInsert,
-                    new BatchPreparedStatementSetter() {
+            rowsWritten.addAndGet(sum(jdbcTemplate.batchUpdate(sqlQueryInsert, added)));
+        }
+    }
 
-                        public void setValues(PreparedStatement ps, int i) throws SQLException {
-                            Genre genre = iter.next();
-                            ps.setLong(1, film.getId());
-                            ps.setLong(2, genre.getId());
-                        }
+    private static int sum(int[] counts) {
+        int result = 0;
+        for (int count : counts) {
+            result += Math.max(count, 0);
+        }
+        return result;
+    }
 
-                        public int getBatchSize() {
-                            return film.getGenres().size();
-                        }
+    @Override
+    @Transactional
+    public boolean addLike(long filmId, long userId) {
+
+        String sqlQuery = "merge into film_likes " +
+                "using (values (cast(? as integer), cast(? as integer))) as source(film_id, user_id) " +
+                "on film_likes.film_id = source.film_id and film_likes.user_id = source.user_id " +
+                "when not matched then insert (film_id, user_id) values (source.film_id, source.user_id)";
+        try {
+            if (jdbcTemplate.update(sqlQuery, filmId, userId) == 0) {
+                return false;
+            }
+        } catch (DuplicateKeyException e) {
+            log.debug("Лайк фильму {} от пользователя {} уже поставлен", filmId, userId);
+            return false;
+        }
+        updateLikesCount(filmId, 1);
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public boolean deleteLike(long filmId, long userId) {
 
-                    });
+        String sqlQuery = "delete from film_likes where film_id = ? and user_id = ? ";
+        if (jdbcTemplate.update(sqlQuery, filmId, userId) == 0) {
+            return false;
         }
+        updateLikesCount(filmId, -1);
+        return true;
     }
 
     @Override
-    public void addLike(Film film, long userId) {
+    public boolean exists(long id) {
+
+        String sqlQuery = "select count(*) from films where id = ?";
+        Integer count = jdbcTemplate.queryForObject(sqlQuery, Integer.class, id);
+        return count != null && count > 0;
+    }
 
-        String sqlQuery = "insert into film_likes(film_id, user_id) " +
-                "values (?, ?)";
-        jdbcTemplate.update(sqlQuery, film.getId(), userId);
-        film.like(userId);
+    @Override
+    public boolean isLiked(long filmId, long userId) {
 
+        String sqlQuery = "select count(*) from film_likes where film_id = ? and user_id = ?";
+        Integer count = jdbcTemplate.queryForObject(sqlQuery, Integer.class, filmId, userId);
+        return count != null && count > 0;
     }
 
     @Override
-    public void deleteLike(Film film, long userId) {
+    @Transactional
+    public void saveLikes(Collection<FilmLike> added, Collection<FilmLike> removed) {
+
+        String sqlQueryMerge = "merge into film_likes key (film_id, user_id) values (?, ?)";
+        jdbcTemplate.batchUpdate(sqlQueryMerge, added.stream()
+                .map(like -> new Object[]{like.getFilmId(), like.getUserId()})
+                .collect(Collectors.toList()));
+
+        String sqlQueryDelete = "delete from film_likes where film_id = ? and user_id = ?";
+        jdbcTemplate.batchUpdate(sqlQueryDelete, removed.stream()
+                .map(like -> new Object[]{like.getFilmId(), like.getUserId()})
+                .collect(Collectors.toList()));
+
+        String sqlQueryCount = "update films set likes_count = " +
+                "(select count(*) from film_likes where film_likes.film_id = films.id) " +
+                "where id = ?";
+        jdbcTemplate.batchUpdate(sqlQueryCount, Stream.concat(added.stream(), removed.stream())
+                .map(FilmLike::getFilmId)
+                .distinct()
+                .map(filmId -> new Object[]{filmId})
+                .collect(Collectors.toList()));
+    }
 
-        String sqlQuery = "delete from film_likes where film_id = ? and user_id = ? ";
-        jdbcTemplate.update(sqlQuery, film.getId(), userId);
-        film.dislike(userId);
+    private void updateLikesCount(long filmId, int delta) {
 
+        String sqlQuery = "update films set likes_count = likes_count + ? where id = ?";
+        jdbcTemplate.update(sqlQuery, delta, filmId);
+    }
+
+    @Override
+    @Transactional
+    public void recalculateLikesCount() {
+
+        String sqlQuery = "update films set likes_count = " +
+                "(select count(*) from film_likes where film_likes.film_id = films.id) " +
+                "where likes_count <> (select count(*) from film_likes where film_likes.film_id = films.id)";
+        int updated = jdbcTemplate.update(sqlQuery);
+        if (updated > 0) {
+            log.warn("Пересчитано количество лайков у фильмов: {}", updated);
+        }
     }
 
     @Override
     public List<Film> findAll() {
-        final HashMap<Long, Set<Genre>> genres = getFilmsGenres();
-        final HashMap<Long, Set<Long>> likes = getFilmsLikes();
-
-        String sqlQuery = "select films.id, films.name, films.description, films.release_date, films.duration, " +
-                "ratings_mpa.id as ratings_mpa_id, ratings_mpa.name as ratings_mpa_name " +
-                "from films left join ratings_mpa " +
-                "on films.rating_mpa = ratings_mpa.id";
-        return jdbcTemplate.queryForStream(sqlQuery, this::mapRowToFilm)
-                .peek(film -> {
-                    film.setGenres(genres.getOrDefault(film.getId(), new HashSet<>()));
-                    film.setLikes(likes.getOrDefault(film.getId(), new HashSet<>()));
-                })
+        final LongGroups genres = getFilmsGenres();
+        final LongGroups likes = getFilmsLikes();
+
+        String sqlQuery = FILM_SELECT;
+        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm).stream()
+                .peek(film -> hydrate(film, genres, likes))
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+
+        String sqlQuery = FILM_SELECT +
+                "where films.id > ? " +
+                "order by films.id " +
+                "limit ?";
+        final List<Film> films = jdbcTemplate.query(sqlQuery, this::mapRowToFilm, afterId, limit);
+        if (films.isEmpty()) {
+            return films;
+        }
+
+        final List<Long> ids = films.stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+        final LongGroups genres = getFilmsGenres(ids);
+        final LongGroups likes = getFilmsLikes(ids);
+        films.forEach(film -> hydrate(film, genres, likes));
+        return films;
+    }
+
     @Override
     public Optional<Film> findById(long id) {
-        final Set<Genre> genres = getFilmGenres(id);
-        final Set<Long> likes = getFilmLikes(id);
 
-        String sqlQuery = "select films.id, films.name, films.description, films.release_date, films.duration, " +
-                "ratings_mpa.id as ratings_mpa_id, ratings_mpa.name as ratings_mpa_name " +
-                "from films left join ratings_mpa " +
-                "on films.rating_mpa = ratings_mpa.id " +
+        String sqlQuery = HYDRATED_FILM_SELECT +
                 "where films.id = ?";
-        return jdbcTemplate.queryForStream(sqlQuery, this::mapRowToFilm, id)
-                .peek(film -> {
-                    film.setGenres(genres);
-                    film.setLikes(likes);
-                })
+        return jdbcTemplate.query(sqlQuery, this::mapRowToHydratedFilm, id).stream()
                 .findFirst();
     }
 
-    private Set<Genre> getFilmGenres(long id) {
+    @Override
+    public List<Film> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
+        String sqlQuery = String.format(HYDRATED_FILM_SELECT +
+                "where films.id IN (%s)", inSql);
+        return jdbcTemplate.query(sqlQuery, this::mapRowToHydratedFilm, ids.toArray());
+    }
 
-        String sqlQuery = "select film_genres.genre_id as id, genres.name " +
-                "from film_genres left join genres " +
-                "on film_genres.genre_id = genres.id " +
-                "where film_id = ?";
-        return jdbcTemplate.queryForStream(
-                    sqlQuery,
-                    (rs, rowNum) -> new Genre(rs.getLong("id"), rs.getString("name")),
-                    id)
-                .collect(Collectors.toSet());
+    @Override
+    public Map<Long, Integer> findLikesCounts() {
+
+        String sqlQuery = "select id, likes_count from films";
+        return jdbcTemplate.query(sqlQuery, rs -> {
+            Map<Long, Integer> counts = new HashMap<>();
+            while (rs.next()) {
+                counts.put(rs.getLong("id"), rs.getInt("likes_count"));
+            }
+            return counts;
+        });
+    }
+
+    @Override
+    public void forEachLike(LikeConsumer consumer) {
+
+        String sqlQuery = "select film_id, user_id from film_likes";
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1), rs.getLong(2)));
+    }
+
+    @Override
+    public List<Film> findPopular(int count, Long genreId, Integer year) {
+
+        List<Object> params = new ArrayList<>();
+        String sqlQuery = popularQuery(count, genreId, year, params);
+        return jdbcTemplate.query(sqlQuery, this::mapRowToHydratedFilm, params.toArray());
     }
 
-    private HashMap<Long, Set<Genre>> getFilmsGenres() {
+    /**
+     * Год задаётся диапазоном release_date, а жанр — подзапросом по film_genres(genre_id, film_id),
+     * чтобы оба условия выполнялись по индексам.
+     */
+    static String popularQuery(int count, Long genreId, Integer year, List<Object> params) {
 
-        String sqlQuery = "select film_genres.film_id, film_genres.genre_id as id, genres.name as genre_name " +
-                "from film_genres left join genres " +
-                "on film_genres.genre_id = genres.id";
+        StringBuilder sqlQuery = new StringBuilder(HYDRATED_FILM_SELECT).append("where true ");
+        if (genreId != null) {
+            sqlQuery.append("and films.id in (select film_id from film_genres where genre_id = ?) ");
+            params.add(genreId);
+        }
+        if (year != null) {
+            sqlQuery.append("and films.release_date >= ? and films.release_date < ? ");
+            params.add(Timestamp.valueOf(LocalDate.of(year, 1, 1).atStartOfDay()));
+            params.add(Timestamp.valueOf(LocalDate.of(year + 1, 1, 1).atStartOfDay()));
+        }
+        sqlQuery.append("order by films.likes_count desc, films.id limit ?");
+        params.add(count);
+        return sqlQuery.toString();
+    }
+
+    /**
+     * Жанры и лайки фильмов группами по film_id. Запросы упорядочены по первичному ключу,
+     * поэтому H2 отдаёт строки по индексу без сортировки.
+     */
+    private LongGroups getFilmsGenres() {
+
+        String sqlQuery = "select film_id, genre_id from film_genres order by film_id, genre_id";
 
         return jdbcTemplate.query(
                 sqlQuery,
-                FilmDbStorage::extractGenres);
+                LongGroups.extractor());
     }
 
-    private Set<Long> getFilmLikes(long id) {
+    private LongGroups getFilmsGenres(Collection<Long> ids) {
 
-        String sqlQuery = "select user_id from film_likes where film_id = ?";
-        return jdbcTemplate.queryForStream(
-                        sqlQuery,
-                        (rs, rowNum) -> rs.getLong("user_id"),
-                        id)
-                .collect(Collectors.toSet());
+        String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
+        String sqlQuery = String.format("select film_id, genre_id " +
+                "from film_genres where film_id IN (%s) order by film_id, genre_id", inSql);
+
+        return jdbcTemplate.query(
+                sqlQuery,
+                LongGroups.extractor(),
+                ids.toArray());
     }
 
-    private HashMap<Long, Set<Long>> getFilmsLikes() {
+    private LongGroups getFilmsLikes() {
 
-        String sqlQuery = "select film_id, user_id from film_likes";
+        String sqlQuery = "select film_id, user_id from film_likes order by film_id, user_id";
 
         return jdbcTemplate.query(
                 sqlQuery,
-                FilmDbStorage::extractLikes);
+                LongGroups.extractor());
+    }
+
+    private LongGroups getFilmsLikes(Collection<Long> ids) {
+
+        String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
+        String sqlQuery = String.format("select film_id, user_id " +
+                "from film_likes where film_id IN (%s) order by film_id, user_id", inSql);
+
+        return jdbcTemplate.query(
+                sqlQuery,
+                LongGroups.extractor(),
+                ids.toArray());
+    }
+
+    /**
+     * Жанры берутся из справочника {@link GenreService}, так что объекты Genre общие для всех фильмов.
+     */
+    private void hydrate(Film film, LongGroups genres, LongGroups likes) {
+        Set<Genre> filmGenres = new HashSet<>();
+        genres.forEach(film.getId(), (genreId, flag) -> filmGenres.add(genreService.resolve(genreId)));
+        film.setGenres(filmGenres);
+        film.setLikes(SortedLongSet.ofSorted(likes.get(film.getId())));
     }
 
     private Film mapRowToFilm(ResultSet rs, int i) throws SQLException {
@@ -202,39 +500,38 @@ public class FilmDbStorage implements FilmStorage {
         String description = rs.getString("description");
         int duration = rs.getInt("duration");
         LocalDate releaseDate = rs.getDate("release_date").toLocalDate();
-        MPA mpa = new MPA(rs.getLong("ratings_mpa_id"), rs.getString("ratings_mpa_name"));
+        long mpaId = rs.getLong("rating_mpa");
+        MPA mpa = rs.wasNull() ? null : mpaService.resolve(mpaId);
         Film film = new Film(name, description, releaseDate, duration, mpa);
         film.setId(id);
+        film.setVersion(rs.getLong("version"));
         return film;
     }
 
-    private static HashMap<Long, Set<Genre>> extractGenres(ResultSet rs) throws SQLException {
-        HashMap<Long, Set<Genre>> map = new HashMap<>();
-        while (rs.next()) {
-            if (map.containsKey(rs.getLong("film_id"))) {
-                map.get(rs.getLong("film_id"))
-                        .add(new Genre(rs.getLong("genre_id"), rs.getString("genre_name")));
-            } else {
-                Set<Genre> genre = new HashSet<>();
-                genre.add(new Genre(rs.getLong("genre_id"), rs.getString("genre_name")));
-                map.put(rs.getLong("film_id"), genre);
-            }
+    private Film mapRowToHydratedFilm(ResultSet rs, int i) throws SQLException {
+        Film film = mapRowToFilm(rs, i);
+        Set<Genre> genres = new HashSet<>();
+        for (Object genreId : toArray(rs.getArray("genre_ids"))) {
+            genres.add(genreService.resolve(((Number) genreId).longValue()));
+        }
+        Object[] likeIds = toArray(rs.getArray("like_ids"));
+        long[] likes = new long[likeIds.length];
+        for (int j = 0; j < likes.length; j++) {
+            likes[j] = ((Number) likeIds[j]).longValue();
         }
-        return map;
+        film.setGenres(genres);
+        film.setLikes(SortedLongSet.of(likes));
+        return film;
     }
 
-    private static HashMap<Long, Set<Long>> extractLikes(ResultSet rs) throws SQLException {
-        HashMap<Long, Set<Long>> map = new HashMap<>();
-        while (rs.next()) {
-            if (map.containsKey(rs.getLong("film_id"))) {
-                map.get(rs.getLong("film_id"))
-                        .add(rs.getLong("user_id"));
-            } else {
-                Set<Long> like = new HashSet<>();
-                like.add(rs.getLong("user_id"));
-                map.put(rs.getLong("film_id"), like);
-            }
+    private static Object[] toArray(Array array) throws SQLException {
+        if (array == null) {
+            return new Object[0];
+        }
+        try {
+            return (Object[]) array.getArray();
+        } finally {
+            array.free();
         }
-        return map;
     }
 }
@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.storage.impl;
+
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Ключи, сгенерированные пакетной вставкой.
+ */
+final class GeneratedKeys {
+
+    private GeneratedKeys() {
+    }
+
+    /**
+     * Раскладывает ключи по объектам в порядке вставки.
+     */
+    static <T> void assign(PreparedStatement stmt, List<T> items, ObjLongConsumer<T> setId) throws SQLException {
+        int i = 0;
+        try (ResultSet keys = stmt.getGeneratedKeys()) {
+            while (i < items.size() && keys.next()) {
+                setId.accept(items.get(i++), keys.getLong(1));
+            }
+        }
+        if (i != items.size()) {
+            throw new IncorrectResultSizeDataAccessException("Получены не все сгенерированные id", items.size(), i);
+        }
+    }
+}
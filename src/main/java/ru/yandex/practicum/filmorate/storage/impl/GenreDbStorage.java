@@ -31,7 +31,7 @@ public class GenreDbStorage implements GenreStorage {
     public Optional<Genre> findById(long id) {
         String sqlQuery = "select id, name " +
                 "from genres where id = ?";
-        return jdbcTemplate.queryForStream(sqlQuery, this::mapRowToGenre, id).findFirst();
+        return jdbcTemplate.query(sqlQuery, this::mapRowToGenre, id).stream().findFirst();
     }
 
     private Genre mapRowToGenre(ResultSet rs, int i) throws SQLException {
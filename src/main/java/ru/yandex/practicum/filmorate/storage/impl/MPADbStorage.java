@@ -31,7 +31,7 @@ public class MPADbStorage implements MPAStorage {
     public Optional<MPA> findById(long id) {
         String sqlQuery = "select id, name " +
                 "from ratings_mpa where id = ?";
-        return jdbcTemplate.queryForStream(sqlQuery, this::mapRowToRating, id).findFirst();
+        return jdbcTemplate.query(sqlQuery, this::mapRowToRating, id).stream().findFirst();
     }
 
     private MPA mapRowToRating(ResultSet rs, int i) throws SQLException {
@@ -1,13 +1,17 @@
 package ru.yandex.practicum.filmorate.storage.impl;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.annotation.Primary;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.dao.UserStorage;
+import ru.yandex.practicum.filmorate.util.LongGroups;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -19,7 +23,6 @@ import java.util.stream.Collectors;
 
 @Repository
 @Slf4j
-@Primary
 public class UserDbStorage implements UserStorage {
 
     private final JdbcTemplate jdbcTemplate;
@@ -28,7 +31,12 @@ public class UserDbStorage implements UserStorage {
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    /**
+     * Обновление увеличивает версию пользователя. Если в пользователе указана версия,
+     * запись выполняется только при её совпадении, иначе выбрасывается {@link OptimisticLockingFailureException}.
+     */
     @Override
+    @Transactional
     public User save(User user) {
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
@@ -49,19 +57,39 @@ public class UserDbStorage implements UserStorage {
             }, keyHolder);
 
             user.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+            user.setVersion(0L);
 
         } else {
             log.debug("Обновлен пользователь: {}", user);
 
-            String sqlQuery = "update users set email = ?, login = ?, name = ?, birthday = ? " +
-                    "where users.id = ?";
-
-            jdbcTemplate.update(sqlQuery,
-                    user.getEmail(),
-                    user.getLogin(),
-                    user.getName(),
-                    user.getBirthday(),
-                    user.getId());
+            String sqlQuery = "update users set email = ?, login = ?, name = ?, birthday = ?, " +
+                    "version = version + 1 where users.id = ?";
+
+            int updated;
+            if (user.getVersion() == null) {
+                updated = jdbcTemplate.update(sqlQuery,
+                        user.getEmail(),
+                        user.getLogin(),
+                        user.getName(),
+                        user.getBirthday(),
+                        user.getId());
+            } else {
+                updated = jdbcTemplate.update(sqlQuery + " and users.version = ?",
+                        user.getEmail(),
+                        user.getLogin(),
+                        user.getName(),
+                        user.getBirthday(),
+                        user.getId(),
+                        user.getVersion());
+                if (updated == 0) {
+                    throw new OptimisticLockingFailureException(String.format(
+                            "Пользователь с id = %d изменён другим запросом", user.getId()));
+                }
+            }
+            if (updated > 0) {
+                user.setVersion(jdbcTemplate.queryForObject(
+                        "select version from users where id = ?", Long.class, user.getId()));
+            }
         }
 
         return user;
@@ -69,57 +97,95 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
-    public User addFriend(User user, User.Friend friend) {
+    @Transactional
+    public List<User> saveAll(List<User> users) {
+
+        String sqlQuery = "insert into users(email, login, name, birthday) " +
+                "values (?, ?, ?, ?)";
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"id"})) {
+                for (User user : users) {
+                    stmt.setString(1, user.getEmail());
+                    stmt.setString(2, user.getLogin());
+                    stmt.setString(3, user.getName());
+                    stmt.setTimestamp(4, Timestamp.valueOf(user.getBirthday().atStartOfDay()));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                GeneratedKeys.assign(stmt, users, User::setId);
+                users.forEach(user -> user.setVersion(0L));
+            }
+            return null;
+        });
+        log.debug("Добавлено пользователей пакетом: {}", users.size());
 
-        String sqlQuery = "insert into user_friends(user_id, friend_id, connection) " +
-                "values (?, ?, ?)";
-        jdbcTemplate.update(sqlQuery, user.getId(), friend.getFriendId(), friend.getConnectionType().name());
-        user.addToFriends(friend);
+        return users;
+    }
 
-        return user;
+    @Override
+    public boolean addFriend(long userId, User.Friend friend) {
+
+        String sqlQuery = "merge into user_friends " +
+                "using (values (cast(? as integer), cast(? as integer), cast(? as varchar))) " +
+                "as source(user_id, friend_id, connection) " +
+                "on user_friends.user_id = source.user_id and user_friends.friend_id = source.friend_id " +
+                "when not matched then insert (user_id, friend_id, connection) " +
+                "values (source.user_id, source.friend_id, source.connection)";
+        return jdbcTemplate.update(sqlQuery, userId, friend.getFriendId(), friend.getConnectionType().name()) > 0;
     }
 
     @Override
-    public User updateFriend(User user, User.Friend friend) {
+    public boolean updateFriend(long userId, User.Friend friend) {
 
         String sqlQuery = "update user_friends set connection = ? " +
                 "where user_friends.user_id = ? and user_friends.friend_id = ?";
-        jdbcTemplate.update(sqlQuery, friend.getConnectionType().name(), user.getId(), friend.getFriendId());
-        user.addToFriends(friend);
-
-        return user;
+        return jdbcTemplate.update(sqlQuery, friend.getConnectionType().name(), userId, friend.getFriendId()) > 0;
     }
 
     @Override
-    public User deleteFriend(User user, long friendId) {
+    public boolean deleteFriend(long userId, long friendId) {
 
         String sqlQuery = "delete from user_friends where user_id = ? and friend_id = ? ";
-        jdbcTemplate.update(sqlQuery, user.getId(), friendId);
-        user.deleteFromFriends(friendId);
-
-        return user;
+        return jdbcTemplate.update(sqlQuery, userId, friendId) > 0;
     }
 
     @Override
     public List<User> findAll() {
 
-        HashMap<Long, Set<User.Friend>> friends = getUsersFriends();
+        LongGroups friends = getUsersFriends();
 
-        String sqlQuery = "select id, email, login, name,  birthday from users";
-        return jdbcTemplate.queryForStream(sqlQuery, this::mapRowToUser)
-                .peek(user -> user.setFriends(friends.getOrDefault(user.getId(), new HashSet<>())))
+        String sqlQuery = "select id, email, login, name, birthday, version from users";
+        return jdbcTemplate.query(sqlQuery, this::mapRowToUser).stream()
+                .peek(user -> user.setFriends(toFriends(user.getId(), friends)))
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+
+        String sqlQuery = "select id, email, login, name, birthday, version " +
+                "from users where id > ? order by id limit ?";
+        final List<User> users = jdbcTemplate.query(sqlQuery, this::mapRowToUser, afterId, limit);
+        if (users.isEmpty()) {
+            return users;
+        }
+
+        final LongGroups friends = getUsersFriends(users.stream()
+                .map(User::getId)
+                .collect(Collectors.toSet()));
+        users.forEach(user -> user.setFriends(toFriends(user.getId(), friends)));
+        return users;
+    }
+
     @Override
     public Optional<User> findById(long id) {
 
         final Set<User.Friend> friends = getUserFriends(id);
 
-        String sqlQuery = "select id, email, login, name,  birthday " +
+        String sqlQuery = "select id, email, login, name, birthday, version " +
                 "from users where id = ?";
 
-        return jdbcTemplate.queryForStream(sqlQuery, this::mapRowToUser, id)
+        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, id).stream()
                 .peek(result -> result.setFriends(friends))
                 .findFirst();
     }
@@ -130,16 +196,47 @@ public class UserDbStorage implements UserStorage {
             return new ArrayList<>();
         }
 
-        final HashMap<Long, Set<User.Friend>> friends = getUsersFriends(ids);
+        final LongGroups friends = getUsersFriends(ids);
 
         String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
-        String sqlQuery = String.format("select id, email, login, name,  birthday " +
+        String sqlQuery = String.format("select id, email, login, name, birthday, version " +
                 "from users where id IN (%s)", inSql);
-        return jdbcTemplate.queryForStream(sqlQuery, this::mapRowToUser, ids.toArray())
-                .peek(user -> user.setFriends(friends.get(user.getId())))
+        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, ids.toArray()).stream()
+                .peek(user -> user.setFriends(toFriends(user.getId(), friends)))
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public List<User> findCommonFriends(long userId, long otherId) {
+
+        String sqlQuery = "select id, email, login, name, birthday, version " +
+                "from users where id IN (" +
+                "select user_friends.friend_id from user_friends " +
+                "join user_friends as other_friends on user_friends.friend_id = other_friends.friend_id " +
+                "where user_friends.user_id = ? and other_friends.user_id = ?) " +
+                "order by id";
+        final List<User> users = jdbcTemplate.query(sqlQuery, this::mapRowToUser, userId, otherId);
+        if (users.isEmpty()) {
+            return users;
+        }
+
+        final LongGroups friends = getUsersFriends(users.stream()
+                .map(User::getId)
+                .collect(Collectors.toSet()));
+        users.forEach(user -> user.setFriends(toFriends(user.getId(), friends)));
+        return users;
+    }
+
+    @Override
+    public void forEachFriendship(FriendshipConsumer consumer) {
+
+        String sqlQuery = "select user_id, friend_id, connection from user_friends order by user_id, friend_id";
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) rs -> consumer.accept(
+                rs.getLong(1),
+                rs.getLong(2),
+                User.ConnectionType.Confirmed.name().equals(rs.getString(3))));
+    }
+
     private Set<User.Friend> getUserFriends(long id) {
 
         String sqlQuery = "select friend_id, connection " +
@@ -156,27 +253,37 @@ public class UserDbStorage implements UserStorage {
         }, id);
     }
 
-    private HashMap<Long, Set<User.Friend>> getUsersFriends() {
+    /**
+     * Друзья группами по user_id; запросы упорядочены по первичному ключу user_friends.
+     */
+    private LongGroups getUsersFriends() {
 
-        String sqlQuery = "select user_id, friend_id, connection from user_friends";
+        String sqlQuery = "select user_id, friend_id, connection from user_friends order by user_id, friend_id";
 
         return jdbcTemplate.query(
                 sqlQuery,
-                UserDbStorage::extractFriends);
+                LongGroups.extractor(User.ConnectionType.Confirmed.name()));
     }
 
-    private HashMap<Long, Set<User.Friend>> getUsersFriends(Set<Long> ids) {
+    private LongGroups getUsersFriends(Set<Long> ids) {
 
         String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
         String sqlQuery = String.format("select user_id, friend_id, connection " +
-                "from user_friends where user_id IN (%s)", inSql);
+                "from user_friends where user_id IN (%s) order by user_id, friend_id", inSql);
 
         return jdbcTemplate.query(
                 sqlQuery,
-                UserDbStorage::extractFriends,
+                LongGroups.extractor(User.ConnectionType.Confirmed.name()),
                 ids.toArray());
     }
 
+    private static Set<User.Friend> toFriends(long userId, LongGroups friends) {
+        Set<User.Friend> result = new HashSet<>();
+        friends.forEach(userId, (friendId, confirmed) -> result.add(new User.Friend(userId, friendId,
+                confirmed ? User.ConnectionType.Confirmed : User.ConnectionType.Unconfirmed)));
+        return result;
+    }
+
     private User mapRowToUser(ResultSet rs, int rowNum) throws SQLException {
         int id = rs.getInt("id");
         String email = rs.getString("email");
@@ -185,27 +292,7 @@ public class UserDbStorage implements UserStorage {
         LocalDate birthday = rs.getDate("birthday").toLocalDate();
         User user = new User(email, login, name, birthday);
         user.setId(id);
+        user.setVersion(rs.getLong("version"));
         return user;
     }
-
-    private static HashMap<Long, Set<User.Friend>> extractFriends(ResultSet rs) throws SQLException {
-        HashMap<Long, Set<User.Friend>> map = new HashMap<>();
-        while (rs.next()) {
-            if (map.containsKey(rs.getLong("user_id"))) {
-                map.get(rs.getLong("user_id"))
-                        .add(new User.Friend(
-                                rs.getLong("user_id"),
-                                rs.getLong("friend_id"),
-                                User.ConnectionType.valueOf(rs.getString("connection"))));
-            } else {
-                Set<User.Friend> friend = new HashSet<>();
-                friend.add(new User.Friend(
-                        rs.getLong("user_id"),
-                        rs.getLong("friend_id"),
-                        User.ConnectionType.valueOf(rs.getString("connection"))));
-                map.put(rs.getLong("user_id"), friend);
-            }
-        }
-        return map;
-    }
 }
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Справочник, который целиком читается из базы и хранится в массиве, индексированном по id.
+ * Если запрошенного id нет, справочник перечитывается, но не чаще раза в заданный интервал,
+ * поэтому поток неизвестных id не превращается в поток запросов к базе и не копит состояние.
+ */
+@Slf4j
+public final class IdDictionary<T> {
+
+    private final String name;
+    private final Supplier<List<T>> loader;
+    private final ToLongFunction<T> idOf;
+    private final long refreshIntervalNanos;
+    private final AtomicLong lastMissRefresh;
+
+    private volatile Snapshot<T> snapshot = new Snapshot<>(new Object[0], List.of());
+
+    public IdDictionary(String name, Supplier<List<T>> loader, ToLongFunction<T> idOf, long refreshIntervalMs) {
+        this.name = name;
+        this.loader = loader;
+        this.idOf = idOf;
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMs);
+        this.lastMissRefresh = new AtomicLong(System.nanoTime() - refreshIntervalNanos);
+    }
+
+    public void refresh() {
+        List<T> values = loader.get().stream()
+                .sorted(Comparator.comparingLong(idOf))
+                .collect(Collectors.toUnmodifiableList());
+        Object[] byId = new Object[values.isEmpty() ? 0 : (int) idOf.applyAsLong(values.get(values.size() - 1)) + 1];
+        values.forEach(value -> byId[(int) idOf.applyAsLong(value)] = value);
+        snapshot = new Snapshot<>(byId, values);
+        log.debug("Загружен справочник {}: {}", name, values.size());
+    }
+
+    public List<T> getAll() {
+        return snapshot.all;
+    }
+
+    /**
+     * @return значение или null, если такого id нет
+     */
+    public T get(long id) {
+        return snapshot.get(id);
+    }
+
+    /**
+     * Как {@link #get(long)}, но если id нет, а с прошлого такого перечитывания прошло не меньше интервала,
+     * справочник сначала перечитывается.
+     */
+    public T resolve(long id) {
+        T value = get(id);
+        if (value != null) {
+            return value;
+        }
+        long last = lastMissRefresh.get();
+        long now = System.nanoTime();
+        if (now - last >= refreshIntervalNanos && lastMissRefresh.compareAndSet(last, now)) {
+            refresh();
+            value = get(id);
+        }
+        return value;
+    }
+
+    private static final class Snapshot<T> {
+        private final Object[] byId;
+        private final List<T> all;
+
+        private Snapshot(Object[] byId, List<T> all) {
+            this.byId = byId;
+            this.all = all;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T get(long id) {
+            return id >= 0 && id < byId.length ? (T) byId[(int) id] : null;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+
+/**
+ * Счётчики по неотрицательным int-ключам: хеш-таблица с открытой адресацией без упаковки в объекты.
+ */
+public final class IntCounter {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] counts;
+    private int size;
+
+    public IntCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int increment(int key) {
+        return add(key, 1);
+    }
+
+    public int add(int key, int delta) {
+        int index = indexOf(keys, key);
+        if (keys[index] == EMPTY) {
+            keys[index] = key;
+            if (++size * 2 > keys.length) {
+                grow();
+                index = indexOf(keys, key);
+            }
+        }
+        counts[index] += delta;
+        return counts[index];
+    }
+
+    public int get(int key) {
+        int index = indexOf(keys, key);
+        return keys[index] == EMPTY ? 0 : counts[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(Consumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                action.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = indexOf(keys, oldKeys[i]);
+                keys[index] = oldKeys[i];
+                counts[index] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int indexOf(int[] keys, int key) {
+        int mask = keys.length - 1;
+        int hash = key * 0x9E3779B9;
+        int index = (hash ^ hash >>> 16) & mask;
+        while (keys[index] != EMPTY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(int key, int count);
+    }
+}
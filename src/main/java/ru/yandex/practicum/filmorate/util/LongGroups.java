@@ -0,0 +1,134 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Пары (ключ, значение), сгруппированные по ключу, без упаковки чисел в объекты.
+ * Ключи хранятся по возрастанию, значения группы ключа {@code keys[i]} лежат в
+ * {@code values[offsets[i]..offsets[i + 1])} тоже по возрастанию; у каждого значения может быть признак.
+ */
+public final class LongGroups {
+
+    public static final LongGroups EMPTY = new LongGroups(new long[0], new int[1], new long[0], new BitSet());
+
+    private static final long[] NO_VALUES = new long[0];
+
+    private final long[] keys;
+    private final int[] offsets;
+    private final long[] values;
+    private final BitSet flags;
+
+    private LongGroups(long[] keys, int[] offsets, long[] values, BitSet flags) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.values = values;
+        this.flags = flags;
+    }
+
+    /**
+     * Читает пары из первых двух столбцов по номеру. Строки должны быть упорядочены по ключу и значению.
+     */
+    public static ResultSetExtractor<LongGroups> extractor() {
+        return rs -> read(rs, null);
+    }
+
+    /**
+     * То же, признак значения — совпадение третьего столбца с flagValue.
+     */
+    public static ResultSetExtractor<LongGroups> extractor(String flagValue) {
+        return rs -> read(rs, flagValue);
+    }
+
+    public static LongGroups read(ResultSet rs, String flagValue) throws SQLException {
+        Builder builder = new Builder();
+        while (rs.next()) {
+            builder.add(rs.getLong(1), rs.getLong(2), flagValue != null && flagValue.equals(rs.getString(3)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Значения ключа по возрастанию; если ключа нет — пустой массив.
+     */
+    public long[] get(long key) {
+        int group = Arrays.binarySearch(keys, key);
+        return group < 0 ? NO_VALUES : Arrays.copyOfRange(values, offsets[group], offsets[group + 1]);
+    }
+
+    public void forEach(long key, ValueConsumer action) {
+        int group = Arrays.binarySearch(keys, key);
+        if (group < 0) {
+            return;
+        }
+        for (int i = offsets[group]; i < offsets[group + 1]; i++) {
+            action.accept(values[i], flags.get(i));
+        }
+    }
+
+    public int size(long key) {
+        int group = Arrays.binarySearch(keys, key);
+        return group < 0 ? 0 : offsets[group + 1] - offsets[group];
+    }
+
+    public int getKeyCount() {
+        return keys.length;
+    }
+
+    public int getValueCount() {
+        return values.length;
+    }
+
+    @FunctionalInterface
+    public interface ValueConsumer {
+        void accept(long value, boolean flag);
+    }
+
+    /**
+     * Принимает пары по возрастанию ключа, а внутри ключа — по возрастанию значения.
+     */
+    public static final class Builder {
+        private long[] keys = new long[64];
+        private int[] offsets = new int[65];
+        private long[] values = new long[256];
+        private final BitSet flags = new BitSet();
+        private int keyCount;
+        private int size;
+
+        public void add(long key, long value, boolean flag) {
+            if (keyCount == 0 || keys[keyCount - 1] != key) {
+                if (keyCount > 0 && keys[keyCount - 1] > key) {
+                    throw new IllegalArgumentException(
+                            String.format("Ключи должны идти по возрастанию: %d после %d", key, keys[keyCount - 1]));
+                }
+                if (keyCount == keys.length) {
+                    keys = Arrays.copyOf(keys, keyCount * 2);
+                    offsets = Arrays.copyOf(offsets, keyCount * 2 + 1);
+                }
+                keys[keyCount++] = key;
+                offsets[keyCount - 1] = size;
+            } else if (values[size - 1] >= value) {
+                throw new IllegalArgumentException(
+                        String.format("Значения ключа %d должны идти по возрастанию без повторов", key));
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            if (flag) {
+                flags.set(size);
+            }
+            values[size++] = value;
+        }
+
+        public LongGroups build() {
+            int[] bounds = Arrays.copyOf(offsets, keyCount + 1);
+            bounds[keyCount] = size;
+            return new LongGroups(Arrays.copyOf(keys, keyCount), bounds, Arrays.copyOf(values, size),
+                    (BitSet) flags.clone());
+        }
+    }
+}
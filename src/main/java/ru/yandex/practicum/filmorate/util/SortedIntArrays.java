@@ -0,0 +1,49 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+
+/**
+ * Копирующие изменения отсортированных по возрастанию массивов id без повторов.
+ * Исходный массив не меняется, поэтому его можно отдавать читателям без блокировок.
+ */
+public final class SortedIntArrays {
+
+    private SortedIntArrays() {
+    }
+
+    /**
+     * @return массив с добавленным id; тот же массив, если id уже есть; новый массив из одного id вместо null
+     */
+    public static int[] insert(int[] ids, int id) {
+        if (ids == null) {
+            return new int[]{id};
+        }
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return ids;
+        }
+        int position = -index - 1;
+        int[] result = new int[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, position);
+        result[position] = id;
+        System.arraycopy(ids, position, result, position + 1, ids.length - position);
+        return result;
+    }
+
+    /**
+     * @return массив без id; тот же массив, если id нет; null, если массив стал пустым
+     */
+    public static int[] remove(int[] ids, int id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+        int[] result = new int[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, index);
+        System.arraycopy(ids, index + 1, result, index, ids.length - index - 1);
+        return result;
+    }
+}
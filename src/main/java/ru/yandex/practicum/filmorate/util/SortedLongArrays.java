@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+
+/**
+ * Операции над отсортированными по возрастанию массивами id без повторов.
+ */
+public final class SortedLongArrays {
+
+    private SortedLongArrays() {
+    }
+
+    /**
+     * Пересечение слиянием за O(n + m); если один массив намного короче, используется бинарный поиск.
+     */
+    public static long[] intersect(long[] first, long[] second) {
+        if (first.length > second.length) {
+            long[] swap = first;
+            first = second;
+            second = swap;
+        }
+        long[] result = new long[first.length];
+        int size = 0;
+        if (first.length * 16L < second.length) {
+            int from = 0;
+            for (long value : first) {
+                int index = Arrays.binarySearch(second, from, second.length, value);
+                if (index >= 0) {
+                    result[size++] = value;
+                    from = index + 1;
+                } else {
+                    from = -index - 1;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < first.length && j < second.length) {
+                if (first[i] < second[j]) {
+                    i++;
+                } else if (first[i] > second[j]) {
+                    j++;
+                } else {
+                    result[size++] = first[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    public static boolean contains(long[] values, long value) {
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+}
@@ -0,0 +1,134 @@
+package ru.yandex.practicum.filmorate.util;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Неизменяемое множество id в отсортированном массиве long[]: 8 байт на элемент вместо ~50 у HashSet&lt;Long&gt;.
+ * Изменения возвращают новое множество. В JSON записывается и читается как массив чисел.
+ */
+public final class SortedLongSet extends AbstractSet<Long> {
+
+    public static final SortedLongSet EMPTY = new SortedLongSet(new long[0]);
+
+    private final long[] values;
+
+    private SortedLongSet(long[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Массив сортируется, повторы удаляются; переданный массив не изменяется.
+     */
+    @JsonCreator
+    public static SortedLongSet of(long... values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return ofSorted(distinct(sorted));
+    }
+
+    /**
+     * Массив уже отсортирован по возрастанию без повторов и дальше не изменяется.
+     */
+    public static SortedLongSet ofSorted(long[] values) {
+        return values.length == 0 ? EMPTY : new SortedLongSet(values);
+    }
+
+    public boolean contains(long value) {
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains((long) (Long) o);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Копия элементов по возрастанию.
+     */
+    @JsonValue
+    public long[] toLongArray() {
+        return values.clone();
+    }
+
+    /**
+     * Объединение за один проход слиянием.
+     */
+    public SortedLongSet with(long... added) {
+        SortedLongSet other = of(added);
+        long[] result = new long[values.length + other.values.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < values.length || j < other.values.length) {
+            if (j == other.values.length || i < values.length && values[i] < other.values[j]) {
+                result[size++] = values[i++];
+            } else if (i == values.length || values[i] > other.values[j]) {
+                result[size++] = other.values[j++];
+            } else {
+                result[size++] = values[i++];
+                j++;
+            }
+        }
+        return size == values.length ? this : ofSorted(Arrays.copyOf(result, size));
+    }
+
+    /**
+     * Разность за один проход слиянием.
+     */
+    public SortedLongSet without(long... removed) {
+        SortedLongSet other = of(removed);
+        long[] result = new long[values.length];
+        int size = 0;
+        int j = 0;
+        for (long value : values) {
+            while (j < other.values.length && other.values[j] < value) {
+                j++;
+            }
+            if (j == other.values.length || other.values[j] != value) {
+                result[size++] = value;
+            }
+        }
+        return size == values.length ? this : ofSorted(Arrays.copyOf(result, size));
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < values.length;
+            }
+
+            @Override
+            public Long next() {
+                if (index == values.length) {
+                    throw new NoSuchElementException();
+                }
+                return values[index++];
+            }
+        };
+    }
+
+    private static long[] distinct(long[] sorted) {
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+}
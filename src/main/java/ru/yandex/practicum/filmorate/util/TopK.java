@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+
+/**
+ * Ограниченная куча для отбора k лучших id по неотрицательному счёту.
+ * При равном счёте выше меньший id. Счёт и id упакованы в один long, так что куча — просто массив.
+ */
+public final class TopK {
+
+    private final long[] heap;
+    private int size;
+
+    public TopK(int k) {
+        heap = new long[k];
+    }
+
+    public void offer(int id, int score) {
+        if (heap.length == 0) {
+            return;
+        }
+        long key = ((long) score << 32) | (0xFFFFFFFFL - id);
+        if (size < heap.length) {
+            heap[size] = key;
+            siftUp(size++);
+        } else if (key > heap[0]) {
+            heap[0] = key;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return id в порядке убывания счёта
+     */
+    public long[] toSortedIds() {
+        long[] keys = Arrays.copyOf(heap, size);
+        Arrays.sort(keys);
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = 0xFFFFFFFFL - (keys[size - 1 - i] & 0xFFFFFFFFL);
+        }
+        return ids;
+    }
+
+    private void siftUp(int index) {
+        long key = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = key;
+    }
+
+    private void siftDown(int index) {
+        long key = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (key <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = key;
+    }
+}
@@ -3,8 +3,10 @@ CREATE TABLE IF NOT EXISTS users (
                                      email varchar NOT NULL,
                                      login varchar NOT NULL,
                                      name varchar,
-                                     birthday timestamp
+                                     birthday timestamp,
+                                     version INTEGER DEFAULT 0 NOT NULL
 );
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version INTEGER DEFAULT 0 NOT NULL;
 CREATE TABLE IF NOT EXISTS user_friends (
                                             user_id INTEGER REFERENCES users (id) ON DELETE CASCADE,
                                             friend_id INTEGER REFERENCES users (id) ON DELETE CASCADE,
@@ -22,8 +24,14 @@ CREATE TABLE IF NOT EXISTS films (
                                      description varchar(200),
                                      release_date timestamp,
                                      duration INTEGER,
-                                     rating_mpa INTEGER REFERENCES ratings_mpa (id)
+                                     rating_mpa INTEGER REFERENCES ratings_mpa (id),
+                                     likes_count INTEGER DEFAULT 0 NOT NULL,
+                                     version INTEGER DEFAULT 0 NOT NULL
     );
+ALTER TABLE films ADD COLUMN IF NOT EXISTS version INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count INTEGER DEFAULT 0 NOT NULL;
+CREATE INDEX IF NOT EXISTS films_likes_count_idx ON films (likes_count DESC, id);
+CREATE INDEX IF NOT EXISTS films_release_date_idx ON films (release_date);
 CREATE TABLE IF NOT EXISTS film_likes (
                                           film_id INTEGER REFERENCES films (id) ON DELETE CASCADE,
                                           user_id INTEGER REFERENCES users (id) ON DELETE CASCADE,
@@ -38,4 +46,4 @@ CREATE TABLE IF NOT EXISTS film_genres (
                                            genre_id INTEGER REFERENCES genres (id) ON DELETE RESTRICT,
                                            PRIMARY KEY (film_id, genre_id)
     );
-
+CREATE INDEX IF NOT EXISTS film_genres_genre_idx ON film_genres (genre_id, film_id);
@@ -0,0 +1,112 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class ExportControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void exportData() throws Exception {
+        Film film1 = new Film("Name, \"quoted\"", "Description1", LocalDate.of(2000, 1, 1), 100, new MPA(1));
+        film1.setGenres(Set.of(new Genre(2), new Genre(1)));
+        film1 = filmService.createFilm(film1);
+        Film film2 = filmService.createFilm(
+                new Film("Name2", "Description2", LocalDate.of(2001, 2, 2), 200, new MPA(2)));
+        User user1 = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000,1,1)));
+        User user2 = userService.createUser(
+                new User("test2@yandex.ru", "login2", "name2", LocalDate.of(2000,1,1)));
+        filmService.likeFilm(film2.getId(), user1.getId());
+        userService.addUserToFriends(user1.getId(), user2.getId());
+
+        String films = export("/export/films", false);
+        assertEquals("id,name,description,release_date,duration,mpa_id,genre_ids\n"
+                + film1.getId() + ",\"Name, \"\"quoted\"\"\",Description1,2000-01-01,100,1,1;2\n"
+                + film2.getId() + ",Name2,Description2,2001-02-02,200,2,\n", films);
+
+        String likes = export("/export/likes?gzip=true", true);
+        assertEquals("film_id,user_id\n" + film2.getId() + "," + user1.getId() + "\n", likes);
+
+        String[] friendships = export("/export/friendships?format=ndjson", false).split("\n");
+        assertEquals(1, friendships.length);
+        JsonNode friendship = objectMapper.readTree(friendships[0]);
+        assertEquals(user1.getId(), friendship.get("user_id").asLong());
+        assertEquals(user2.getId(), friendship.get("friend_id").asLong());
+
+        JsonNode film = objectMapper.readTree(export("/export/films?format=ndjson", false).split("\n")[0]);
+        assertEquals("2000-01-01", film.get("release_date").asText());
+        assertEquals(2, film.get("genre_ids").size());
+
+        mockMvc.perform(get("/export/reviews"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void exportFilmWithoutRating() throws Exception {
+        Film film = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.of(2000, 1, 1), 100, new MPA(1)));
+        jdbcTemplate.update("update films set rating_mpa = null where id = ?", film.getId());
+
+        assertEquals("id,name,description,release_date,duration,mpa_id,genre_ids\n"
+                + film.getId() + ",Name1,Description1,2000-01-01,100,,\n", export("/export/films", false));
+
+        JsonNode exported = objectMapper.readTree(export("/export/films?format=ndjson", false).split("\n")[0]);
+        assertTrue(exported.get("mpa_id").isNull());
+    }
+
+    private String export(String url, boolean gzip) throws Exception {
+        MvcResult result = mockMvc.perform(get(url))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        byte[] body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        if (gzip) {
+            assertEquals("gzip", result.getResponse().getHeader("Content-Encoding"));
+            body = new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes();
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
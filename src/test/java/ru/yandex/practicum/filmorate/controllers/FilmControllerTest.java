@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
@@ -9,8 +10,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.metrics.SqlBudgetViolations;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MPA;
@@ -25,12 +28,14 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
-@SpringBootTest
+@SpringBootTest(properties = "filmorate.sql.budget.strict=true")
 @AutoConfigureMockMvc
 @AutoConfigureTestDatabase
 class FilmControllerTest {
@@ -42,6 +47,13 @@ class FilmControllerTest {
     private FilmService filmService;
     @Autowired
     private UserService userService;
+    @Autowired
+    private SqlBudgetViolations sqlBudgetViolations;
+
+    @AfterEach
+    void checkSqlBudget() {
+        assertEquals(List.of(), sqlBudgetViolations.drain());
+    }
 
     @Test
     @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
@@ -59,6 +71,58 @@ class FilmControllerTest {
                 .andExpect(content().json(list));
     }
 
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void getFilmsPage() throws Exception {
+
+        Film film1 = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1, "G")));
+        Film film2 = filmService.createFilm(
+                new Film("Name2", "Description2", LocalDate.now(), 200, new MPA(2, "PG")));
+        Film film3 = filmService.createFilm(
+                new Film("Name3", "Description3", LocalDate.now(), 300, new MPA(1, "G")));
+
+        mockMvc.perform(
+                        get("/films?limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(content().json(objectMapper.writeValueAsString(List.of(film1, film2))));
+
+        mockMvc.perform(
+                        get("/films?after=" + film2.getId() + "&limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(content().json(objectMapper.writeValueAsString(List.of(film3))));
+
+        mockMvc.perform(
+                        get("/films?limit=0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void streamFilms() throws Exception {
+
+        Film film1 = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1, "G")));
+        Film film2 = filmService.createFilm(
+                new Film("Name2", "Description2", LocalDate.now(), 200, new MPA(2, "PG")));
+
+        MvcResult result = mockMvc.perform(
+                        get("/films").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String[] lines = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString().split("\n");
+
+        assertEquals(2, lines.length);
+        assertEquals(film1, objectMapper.readValue(lines[0], Film.class));
+        assertEquals(film2, objectMapper.readValue(lines[1], Film.class));
+    }
+
     @Test
     @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
     void createFilm() throws Exception {
@@ -199,6 +263,19 @@ class FilmControllerTest {
                 .andExpect(content().json(json));
     }
 
+    @Test
+    void getFilmResolvesGenreAndMpaNames() throws Exception {
+        Film film = new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(3));
+        film.setGenres(Set.of(new Genre(2)));
+        film = filmService.createFilm(film);
+
+        mockMvc.perform(
+                        get("/films/" + film.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.mpa.name").value("PG-13"))
+                .andExpect(jsonPath("$.genres[0].name").value("Драма"));
+    }
+
     @Test
     void getFilmFailNotFound() throws Exception {
 
@@ -270,6 +347,67 @@ class FilmControllerTest {
 
     }
 
+    @Test
+    void getFilmLikesCount() throws Exception {
+        Film film = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1)));
+
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000,1,1)));
+
+        filmService.likeFilm(film.getId(), user.getId());
+
+        mockMvc.perform(
+                        get("/films/" + film.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.likes", hasSize(1)))
+                .andExpect(jsonPath("$.likes[0]").value(user.getId()))
+                .andExpect(jsonPath("$.likesCount").value(1));
+
+        mockMvc.perform(
+                        get("/films/" + film.getId() + "?likes=count"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.likes").doesNotExist())
+                .andExpect(jsonPath("$.likesCount").value(1))
+                .andExpect(jsonPath("$.name").value("Name1"))
+                .andExpect(jsonPath("$.genres").isArray())
+                .andExpect(jsonPath("$.mpa.id").value(1))
+                .andExpect(jsonPath("$.mpa.name").value("G"));
+
+        mockMvc.perform(
+                        get("/films/" + film.getId() + "?likes=all"))
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof ValidationException));
+    }
+
+    @Test
+    void likeFilmIsIdempotent() {
+        Film film = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1)));
+
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000,1,1)));
+
+        assertTrue(filmService.likeFilm(film.getId(), user.getId()));
+        assertFalse(filmService.likeFilm(film.getId(), user.getId()));
+        assertEquals(1, filmService.getFilmById(film.getId()).getLikes().size());
+
+        assertTrue(filmService.dislikeFilm(film.getId(), user.getId()));
+        assertFalse(filmService.dislikeFilm(film.getId(), user.getId()));
+        assertEquals(0, filmService.getFilmById(film.getId()).getLikes().size());
+    }
+
+    @Test
+    void likeFilmFailFilmNotFound() throws Exception {
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000,1,1)));
+
+        mockMvc.perform(
+                        put("/films/-1/like/" + user.getId()))
+                .andExpect(status().isNotFound())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof NotFoundException));
+    }
+
     @Test
     void dislikeFilmFailNotFound() throws Exception {
         Film film = filmService.createFilm(
@@ -306,12 +444,16 @@ class FilmControllerTest {
         User user3 = userService.createUser(
                 new User("test3@yandex.ru", "login3", "name3", LocalDate.of(2002,3,3)));
 
-        film1 = filmService.likeFilm(film1.getId(), user1.getId());
+        filmService.likeFilm(film1.getId(), user1.getId());
         filmService.likeFilm(film2.getId(), user1.getId());
         filmService.likeFilm(film2.getId(), user2.getId());
-        film2 = filmService.likeFilm(film2.getId(), user3.getId());
+        filmService.likeFilm(film2.getId(), user3.getId());
         filmService.likeFilm(film3.getId(), user1.getId());
-        film3 = filmService.likeFilm(film3.getId(), user2.getId());
+        filmService.likeFilm(film3.getId(), user2.getId());
+
+        film1 = filmService.getFilmById(film1.getId());
+        film2 = filmService.getFilmById(film2.getId());
+        film3 = filmService.getFilmById(film3.getId());
 
         List<Film> films = new ArrayList<>();
         films.add(film2);
@@ -329,5 +471,136 @@ class FilmControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(films)));
 
+        mockMvc.perform(
+                        get("/films/popular?count=-1"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(
+                        get("/films/popular?count=0&genreId=1"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(
+                        get("/films/popular?year=1000000000"))
+                .andExpect(status().isBadRequest());
+
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void getPopularByGenreAndYear() throws Exception {
+        Film comedy2000 = new Film("Name1", "Description1", LocalDate.of(2000, 5, 1), 100, new MPA(1));
+        comedy2000.setGenres(Set.of(new Genre(1)));
+        comedy2000 = filmService.createFilm(comedy2000);
+        Film drama2000 = new Film("Name2", "Description2", LocalDate.of(2000, 12, 31), 100, new MPA(1));
+        drama2000.setGenres(Set.of(new Genre(2)));
+        drama2000 = filmService.createFilm(drama2000);
+        Film comedy2001 = new Film("Name3", "Description3", LocalDate.of(2001, 1, 1), 100, new MPA(1));
+        comedy2001.setGenres(Set.of(new Genre(1)));
+        comedy2001 = filmService.createFilm(comedy2001);
+
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000,1,1)));
+        filmService.likeFilm(comedy2001.getId(), user.getId());
+
+        mockMvc.perform(
+                        get("/films/popular?genreId=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$.[0].id").value(comedy2001.getId()))
+                .andExpect(jsonPath("$.[1].id").value(comedy2000.getId()));
+
+        mockMvc.perform(
+                        get("/films/popular?year=2000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$.[0].id").value(comedy2000.getId()))
+                .andExpect(jsonPath("$.[1].id").value(drama2000.getId()));
+
+        mockMvc.perform(
+                        get("/films/popular?genreId=1&year=2001"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$.[0].id").value(comedy2001.getId()))
+                .andExpect(jsonPath("$.[0].likes", hasSize(1)));
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void searchFilms() throws Exception {
+        Film film1 = filmService.createFilm(
+                new Film("Ёлки", "Новогодняя комедия", LocalDate.of(2010, 12, 16), 90, new MPA(1)));
+        Film film2 = filmService.createFilm(
+                new Film("Ирония судьбы", "Новогодняя история", LocalDate.of(1976, 1, 1), 184, new MPA(1)));
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000,1,1)));
+        filmService.likeFilm(film2.getId(), user.getId());
+
+        mockMvc.perform(
+                        get("/films/search?query=елки"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$.[0].id").value(film1.getId()));
+
+        mockMvc.perform(
+                        get("/films/search?query=новогод&by=title,description"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$.[0].id").value(film2.getId()))
+                .andExpect(jsonPath("$.[1].id").value(film1.getId()));
+
+        film1.setName("Ёлки 2");
+        film1.setDescription("Продолжение");
+        filmService.updateFilm(film1);
+
+        mockMvc.perform(
+                        get("/films/search?query=новогод&by=description"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$.[0].id").value(film2.getId()));
+
+        mockMvc.perform(
+                        get("/films/search?query=елки&by=year"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void createFilmsBatch() throws Exception {
+        Film film1 = new Film("Name1", "Description1", LocalDate.of(2000, 1, 1), 100, new MPA(1));
+        film1.setGenres(Set.of(new Genre(1), new Genre(2)));
+        Film film2 = new Film("Name2", "Description2", LocalDate.of(2001, 1, 1), 200, new MPA(2));
+
+        MvcResult result = mockMvc.perform(
+                        post("/films/batch")
+                                .content(objectMapper.writeValueAsString(List.of(film1, film2)))
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andReturn();
+        long[] ids = objectMapper.readValue(result.getResponse().getContentAsString(), long[].class);
+
+        assertEquals("Name1", filmService.getFilmById(ids[0]).getName());
+        assertEquals(2, filmService.getFilmById(ids[0]).getGenres().size());
+        assertEquals("Name2", filmService.getFilmById(ids[1]).getName());
+
+        Film film3 = new Film("Name3", "Description3", LocalDate.of(2002, 1, 1), 300, new MPA(3));
+        mockMvc.perform(
+                        post("/films/batch")
+                                .content(objectMapper.writeValueAsString(film3) + "\n"
+                                        + objectMapper.writeValueAsString(film1) + "\n")
+                                .contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$.[0]").value(ids[1] + 1))
+                .andExpect(jsonPath("$.[1]").value(ids[1] + 2));
+
+        Film invalid = new Film("", "Description", LocalDate.of(2002, 1, 1), 300, new MPA(3));
+        mockMvc.perform(
+                        post("/films/batch")
+                                .content(objectMapper.writeValueAsString(List.of(film3, invalid)))
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(4, filmService.getFilms().size());
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
@@ -9,8 +10,13 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.metrics.SqlBudgetViolations;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.time.LocalDate;
@@ -22,7 +28,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 
-@SpringBootTest
+@SpringBootTest(properties = "filmorate.sql.budget.strict=true")
 @AutoConfigureMockMvc
 @AutoConfigureTestDatabase
 class UserControllerTest {
@@ -34,6 +40,15 @@ class UserControllerTest {
 
     @Autowired
     private UserService userService;
+    @Autowired
+    private SqlBudgetViolations sqlBudgetViolations;
+
+    @AfterEach
+    void checkSqlBudget() {
+        assertEquals(List.of(), sqlBudgetViolations.drain());
+    }
+    @Autowired
+    private FilmService filmService;
 
     @Test
     @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
@@ -51,6 +66,50 @@ class UserControllerTest {
                 .andExpect(content().json(list));
     }
 
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void getUsersPage() throws Exception {
+        User user1 = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000,1,1)));
+        User user2 = userService.createUser(
+                new User("test2@yandex.ru", "login2", "name2", LocalDate.of(1990,1,1)));
+
+        mockMvc.perform(
+                        get("/users?limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(content().json(objectMapper.writeValueAsString(List.of(user1))));
+
+        mockMvc.perform(
+                        get("/users?after=" + user1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(content().json(objectMapper.writeValueAsString(List.of(user2))));
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void streamUsers() throws Exception {
+        User user1 = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000,1,1)));
+        User user2 = userService.createUser(
+                new User("test2@yandex.ru", "login2", "name2", LocalDate.of(1990,1,1)));
+
+        MvcResult result = mockMvc.perform(
+                        get("/users").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String[] lines = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString().split("\n");
+
+        assertEquals(2, lines.length);
+        assertEquals(user1, objectMapper.readValue(lines[0], User.class));
+        assertEquals(user2, objectMapper.readValue(lines[1], User.class));
+    }
+
     @Test
     @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
     void createUser() throws Exception {
@@ -306,4 +365,133 @@ class UserControllerTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void getFriendSuggestions() throws Exception {
+        User[] users = new User[6];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = userService.createUser(new User("suggest" + i + "@yandex.ru", "suggest" + i, "name" + i,
+                    LocalDate.of(2000, 1, 1)));
+        }
+        userService.addUserToFriends(users[0].getId(), users[1].getId());
+        userService.addUserToFriends(users[1].getId(), users[0].getId());
+        userService.addUserToFriends(users[0].getId(), users[2].getId());
+        userService.confirmUserAsFriend(users[0].getId(), users[2].getId());
+        userService.addUserToFriends(users[1].getId(), users[3].getId());
+        userService.addUserToFriends(users[3].getId(), users[1].getId());
+        userService.addUserToFriends(users[2].getId(), users[3].getId());
+        userService.confirmUserAsFriend(users[2].getId(), users[3].getId());
+        userService.addUserToFriends(users[1].getId(), users[4].getId());
+        userService.confirmUserAsFriend(users[1].getId(), users[4].getId());
+        userService.addUserToFriends(users[1].getId(), users[5].getId());
+
+        mockMvc.perform(
+                        get("/users/" + users[0].getId() + "/friends/suggestions"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$.[0].id").value(users[3].getId()))
+                .andExpect(jsonPath("$.[1].id").value(users[4].getId()));
+
+        mockMvc.perform(
+                        get("/users/" + users[0].getId() + "/friends/suggestions?limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$.[0].id").value(users[3].getId()));
+
+        mockMvc.perform(
+                        get("/users/" + users[0].getId() + "/friends/suggestions?limit=0"))
+                .andExpect(status().is4xxClientError());
+
+        mockMvc.perform(
+                        get("/users/-1/friends/suggestions"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getRecommendations() throws Exception {
+        User user1 = userService.createUser(
+                new User("recommend1@yandex.ru", "recommend1", "name1", LocalDate.of(2000,1,1)));
+        User user2 = userService.createUser(
+                new User("recommend2@yandex.ru", "recommend2", "name2", LocalDate.of(2000,1,1)));
+        Film film1 = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.of(2000,1,1), 100, new MPA(1)));
+        Film film2 = filmService.createFilm(
+                new Film("Name2", "Description2", LocalDate.of(2000,1,1), 100, new MPA(1)));
+        filmService.likeFilm(film1.getId(), user1.getId());
+        filmService.likeFilm(film1.getId(), user2.getId());
+        filmService.likeFilm(film2.getId(), user2.getId());
+
+        mockMvc.perform(
+                        get("/users/" + user1.getId() + "/recommendations"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$.[0].id").value(film2.getId()));
+
+        mockMvc.perform(
+                        get("/users/" + user2.getId() + "/recommendations"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+
+        mockMvc.perform(
+                        get("/users/-1/recommendations"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void createUsersBatch() throws Exception {
+        User user1 = new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000,1,1));
+        User user2 = new User("test2@yandex.ru", "login2", "", LocalDate.of(2001,1,1));
+
+        MvcResult result = mockMvc.perform(
+                        post("/users/batch")
+                                .content(objectMapper.writeValueAsString(user1) + "\n"
+                                        + objectMapper.writeValueAsString(user2))
+                                .contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andReturn();
+        long[] ids = objectMapper.readValue(result.getResponse().getContentAsString(), long[].class);
+
+        assertEquals("login1", userService.getUserById(ids[0]).getLogin());
+        assertEquals("login2", userService.getUserById(ids[1]).getName());
+
+        User invalid = new User("not an email", "login3", "name3", LocalDate.of(2000,1,1));
+        mockMvc.perform(
+                        post("/users/batch")
+                                .content(objectMapper.writeValueAsString(List.of(invalid)))
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(
+                        post("/users/batch")
+                                .content("{\"email\": ")
+                                .contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(2, userService.getUsers().size());
+    }
+
+    @Test
+    void updateUserFailStaleVersion() throws Exception {
+        User user = userService.createUser(
+                new User("version@yandex.ru", "version", "name", LocalDate.of(2000,1,1)));
+        assertEquals(0, user.getVersion());
+
+        user.setName("name2");
+        mockMvc.perform(
+                        put("/users")
+                                .content(objectMapper.writeValueAsString(user))
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(1));
+
+        user.setName("name3");
+        mockMvc.perform(
+                        put("/users")
+                                .content(objectMapper.writeValueAsString(user))
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isConflict());
+
+        assertEquals("name2", userService.getUserById(user.getId()).getName());
+    }
+}
@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class MetricsTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private MeterRegistry registry;
+    @Autowired
+    private FilmService filmService;
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void timesCallsAndCountsStatementsPerRequest() throws Exception {
+        Film film = filmService.createFilm(
+                new Film("Name", "Description", LocalDate.now(), 100, new MPA(1, "G")));
+
+        mockMvc.perform(get("/films/" + film.getId()))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/films/" + film.getId()))
+                .andExpect(status().isOk());
+
+        Timer service = registry.find("filmorate.calls")
+                .tags("class", "FilmService", "method", "getFilmById", "exception", "none")
+                .timer();
+        assertNotNull(service);
+        assertEquals(2, service.count());
+        Timer storage = registry.find("filmorate.calls")
+                .tags("class", "FilmDbStorage", "method", "findById")
+                .timer();
+        assertNotNull(storage);
+        assertEquals(1, storage.count(), "второе чтение из кэша");
+
+        DistributionSummary statements = registry.find("filmorate.http.sql.statements")
+                .tags("method", "GET", "uri", "/films/{id}", "status", "200")
+                .summary();
+        assertNotNull(statements);
+        assertEquals(2, statements.count());
+        assertEquals(1, statements.max(), "первое чтение одним запросом, второе из кэша");
+
+        assertEquals(1, registry.get("cache.gets").tags("cache", "films", "result", "hit").functionCounter().count());
+        assertTrue(registry.get("filmorate.sql.statements").functionCounter().count() > 0);
+    }
+}
@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "filmorate.sql.budget.strict=true",
+        "filmorate.sql.budget.repeat-threshold=2",
+        "filmorate.sql.budget.statements[GET\\ /users/{id}]=1"})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class SqlBudgetTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private SqlBudgetViolations violations;
+
+    @Test
+    void shapeIgnoresValuesAndParameterLists() {
+        assertEquals("select id from users where id IN (?) and name = ?",
+                SqlStatistics.shape("select id from users\n  where id IN (?, ?,?) and name = 'Иван'"));
+        assertEquals(SqlStatistics.shape("select * from films where id = 1"),
+                SqlStatistics.shape("select * from films where id = 25"));
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void failsRequestOverBudget() throws Exception {
+        User user = userService.createUser(new User("mail@mail.ru", "login", "name", LocalDate.of(1990, 1, 1)));
+
+        violations.drain();
+        mockMvc.perform(get("/users/" + user.getId()))
+                .andExpect(status().isOk());
+        List<String> recorded = violations.drain();
+        assertEquals(1, recorded.size());
+        assertTrue(recorded.get(0).contains("GET /users/{id}"), recorded.get(0));
+
+        mockMvc.perform(get("/users/" + user.getId()))
+                .andExpect(status().isOk());
+        assertTrue(violations.drain().isEmpty());
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void failsRequestWithRepeatedStatements() throws Exception {
+        User user = userService.createUser(new User("mail@mail.ru", "login", "name", LocalDate.of(1990, 1, 1)));
+        User friend = userService.createUser(new User("friend@mail.ru", "friend", "name", LocalDate.of(1990, 1, 1)));
+
+        violations.drain();
+        mockMvc.perform(put("/users/" + user.getId() + "/friends/" + friend.getId()))
+                .andExpect(status().isOk());
+        List<String> recorded = violations.drain();
+        assertEquals(1, recorded.size());
+        assertTrue(recorded.get(0).contains("повторяющиеся"), recorded.get(0));
+    }
+}
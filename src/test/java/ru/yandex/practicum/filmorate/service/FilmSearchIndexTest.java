@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilmSearchIndexTest {
+
+    private static final Set<FilmSearchIndex.Field> TITLE = EnumSet.of(FilmSearchIndex.Field.TITLE);
+    private static final Set<FilmSearchIndex.Field> ALL = EnumSet.allOf(FilmSearchIndex.Field.class);
+
+    @Test
+    void tokenizeNormalizesCyrillic() {
+        assertEquals(Set.of("елки", "2", "новый", "год"), FilmSearchIndex.tokenize("Ёлки-2: НОВЫЙ год"));
+        assertTrue(FilmSearchIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    void searchByPrefixesInFields() {
+        FilmSearchIndex index = new FilmSearchIndex(null);
+        index.index(film(1, "Ёлки", "Новогодняя комедия"));
+        index.index(film(2, "Ирония судьбы", "Новогодняя история про баню"));
+        index.index(film(3, "Брат", "Криминальная драма"));
+
+        assertArrayEquals(new long[]{1}, index.search("елк", TITLE));
+        assertArrayEquals(new long[0], index.search("новогодн", TITLE));
+        assertArrayEquals(new long[]{1, 2}, index.search("новогодн", ALL));
+        assertArrayEquals(new long[]{2}, index.search("НОВОГОДН ист", ALL));
+        assertArrayEquals(new long[0], index.search("  ", ALL));
+
+        index.index(film(3, "Брат 2", "Новогодний боевик"));
+
+        assertArrayEquals(new long[]{1, 2, 3}, index.search("новогод", ALL));
+        assertArrayEquals(new long[0], index.search("криминал", ALL));
+        assertArrayEquals(new long[]{3}, index.search("брат 2", TITLE));
+        assertTrue(index.getMemoryEstimate() > 0);
+    }
+
+    private static Film film(long id, String name, String description) {
+        Film film = new Film(name, description, LocalDate.of(2000, 1, 1), 100, new MPA(1));
+        film.setId(id);
+        return film;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FriendGraphTest {
+
+    @Test
+    void readsBaseAndDelta() {
+        FriendGraph graph = new FriendGraph(null, 4);
+        FriendGraph.Builder builder = new FriendGraph.Builder();
+        builder.add(1, 2, true);
+        builder.add(1, 3, false);
+        builder.add(1, 5, true);
+        builder.add(2, 1, true);
+        builder.add(2, 3, false);
+        builder.add(4, 5, false);
+        graph.load(builder);
+
+        assertArrayEquals(new long[]{2, 3, 5}, graph.getFriends(1));
+        assertArrayEquals(new long[]{3}, graph.getCommonFriends(1, 2));
+        assertEquals(0, graph.getDegree(3));
+        assertEquals(0, graph.getDegree(100));
+        assertTrue(graph.isConfirmed(1, 2));
+        assertFalse(graph.isConfirmed(1, 3));
+        assertTrue(graph.areMutualFriends(1, 2));
+        assertFalse(graph.areMutualFriends(1, 3));
+
+        graph.addFriend(2, 5, false);
+        graph.deleteFriend(1, 3);
+        graph.addFriend(1, 3, true);
+        graph.addFriend(7, 1, true);
+
+        assertEquals(3, graph.getDeltaSize());
+        assertArrayEquals(new long[]{2, 3, 5}, graph.getFriends(1));
+        assertTrue(graph.isConfirmed(1, 3));
+        assertArrayEquals(new long[]{3, 5}, graph.getCommonFriends(1, 2));
+        assertArrayEquals(new long[]{1}, graph.getFriends(7));
+        assertEquals(8, graph.getEdgeCount());
+
+        graph.addFriend(4, 1, false);
+
+        assertEquals(0, graph.getDeltaSize());
+        assertArrayEquals(new long[]{1, 5}, graph.getFriends(4));
+        assertArrayEquals(new long[]{1, 3, 5}, graph.getFriends(2));
+        assertArrayEquals(new long[]{1}, graph.getFriends(7));
+        assertTrue(graph.isConfirmed(1, 3));
+        assertEquals(9, graph.getEdgeCount());
+    }
+
+    @Test
+    void suggestFriendsByConfirmedMutualFriends() {
+        FriendGraph graph = new FriendGraph(null, 4096);
+        FriendGraph.Builder builder = new FriendGraph.Builder();
+        builder.add(1, 2, true);
+        builder.add(1, 3, false);
+        builder.add(2, 4, true);
+        builder.add(2, 5, true);
+        builder.add(2, 6, false);
+        builder.add(3, 1, false);
+        builder.add(3, 5, true);
+        graph.load(builder);
+
+        assertArrayEquals(new long[]{5, 4}, graph.suggestFriends(1, 10));
+        assertArrayEquals(new long[]{5}, graph.suggestFriends(1, 1));
+        assertArrayEquals(new long[0], graph.suggestFriends(7, 10));
+
+        graph.addFriend(1, 5, false);
+
+        assertArrayEquals(new long[]{4}, graph.suggestFriends(1, 10));
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+class LikeIndexTest {
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LikeIndex likeIndex;
+
+    @Test
+    void recommendFilmsOfSimilarUsers() {
+        LikeIndex index = new LikeIndex(null, null, 2, 1000, 0);
+        LikeIndex.Builder builder = new LikeIndex.Builder();
+        builder.add(1, 1);
+        builder.add(2, 1);
+        builder.add(1, 2);
+        builder.add(2, 2);
+        builder.add(3, 2);
+        builder.add(1, 3);
+        builder.add(4, 3);
+        builder.add(5, 4);
+        builder.add(2, 1);
+        index.load(builder);
+
+        assertArrayEquals(new int[]{1, 2}, index.getFilms(1));
+        assertArrayEquals(new long[]{3, 4}, index.recommend(1, 10));
+        assertArrayEquals(new long[]{3}, index.recommend(1, 1));
+        assertArrayEquals(new long[0], index.recommend(4, 10));
+        assertArrayEquals(new long[0], index.recommend(100, 10));
+
+        index.like(5, 2);
+        index.like(5, 2);
+        assertArrayEquals(new long[]{3, 5, 4}, index.recommend(1, 10));
+
+        index.dislike(1, 1);
+        index.dislike(2, 1);
+        assertArrayEquals(new int[0], index.getFilms(1));
+        assertArrayEquals(new long[0], index.recommend(1, 10));
+    }
+
+    @Test
+    void rebuildDropsLikesAppliedOutOfOrder() {
+        Film film = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1)));
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000, 1, 1)));
+
+        filmService.likeFilm(film.getId(), user.getId());
+        filmService.dislikeFilm(film.getId(), user.getId());
+        // те же изменения в обратном порядке оставляют в индексе лайк, которого нет в базе
+        likeIndex.dislike(film.getId(), user.getId());
+        likeIndex.like(film.getId(), user.getId());
+        assertArrayEquals(new int[]{(int) film.getId()}, likeIndex.getFilms(user.getId()));
+
+        likeIndex.rebuild();
+        assertArrayEquals(new int[0], likeIndex.getFilms(user.getId()));
+    }
+}
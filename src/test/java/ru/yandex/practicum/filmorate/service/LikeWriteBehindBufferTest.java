@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.capacity=3",
+        "filmorate.likes.write-behind.flush-interval-ms=600000"
+})
+@AutoConfigureTestDatabase
+class LikeWriteBehindBufferTest {
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private FilmStorage filmStorage;
+    @Autowired
+    private LikeWriteBehindBuffer likeBuffer;
+    @Autowired
+    private PopularityIndex popularityIndex;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void pendingLikesAreVisibleBeforeFlush() {
+        Film film = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1)));
+        User user1 = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000, 1, 1)));
+        User user2 = userService.createUser(
+                new User("test2@yandex.ru", "login2", "name2", LocalDate.of(2000, 1, 1)));
+
+        assertTrue(filmService.likeFilm(film.getId(), user1.getId()));
+        assertFalse(filmService.likeFilm(film.getId(), user1.getId()));
+        assertTrue(filmService.likeFilm(film.getId(), user2.getId()));
+        assertTrue(filmService.dislikeFilm(film.getId(), user2.getId()));
+
+        assertFalse(filmStorage.isLiked(film.getId(), user1.getId()));
+        Film pending = filmService.getFilmById(film.getId());
+        assertEquals(Set.of(user1.getId()), pending.getLikes());
+        assertNotNull(pending.getVersion());
+        assertEquals(film.getVersion(), pending.getVersion());
+        assertEquals(1, popularityIndex.getLikes(film.getId()));
+
+        likeBuffer.flush();
+
+        assertEquals(0, likeBuffer.getSize());
+        assertTrue(filmStorage.isLiked(film.getId(), user1.getId()));
+        assertFalse(filmStorage.isLiked(film.getId(), user2.getId()));
+        assertEquals(Set.of(user1.getId()), filmService.getFilmById(film.getId()).getLikes());
+        assertTrue(popularityIndex.checkConsistency().isEmpty());
+    }
+
+    @Test
+    void likeOfUnknownFilmIsRejected() {
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000, 1, 1)));
+
+        assertThrows(NotFoundException.class, () -> filmService.likeFilm(-1, user.getId()));
+        assertThrows(NotFoundException.class, () -> filmService.dislikeFilm(-1, user.getId()));
+        assertEquals(0, likeBuffer.getSize());
+    }
+
+    @Test
+    void flushOnFullQueueSurvivesCallerRollback() {
+        Film film = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1)));
+        long[] userIds = new long[4];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = userService.createUser(new User("test" + i + "@yandex.ru", "login" + i, "name" + i,
+                    LocalDate.of(2000, 1, 1))).getId();
+        }
+        for (int i = 0; i < 3; i++) {
+            filmService.likeFilm(film.getId(), userIds[i]);
+        }
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            filmService.likeFilm(film.getId(), userIds[3]);
+            filmService.dislikeFilm(film.getId(), userIds[3]);
+            status.setRollbackOnly();
+        });
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(filmStorage.isLiked(film.getId(), userIds[i]));
+        }
+        likeBuffer.flush();
+        assertFalse(filmStorage.isLiked(film.getId(), userIds[3]));
+    }
+}
@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+class PopularityIndexTest {
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private PopularityIndex popularityIndex;
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void concurrentLikes() throws Exception {
+        Film film1 = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1)));
+        Film film2 = filmService.createFilm(
+                new Film("Name2", "Description2", LocalDate.now(), 100, new MPA(1)));
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            users.add(userService.createUser(
+                    new User("test" + i + "@yandex.ru", "login" + i, "name" + i, LocalDate.of(2000, 1, 1))));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (User user : users) {
+            futures.add(executor.submit(() -> filmService.likeFilm(film2.getId(), user.getId())));
+        }
+        for (User user : users.subList(0, 5)) {
+            futures.add(executor.submit(() -> filmService.likeFilm(film1.getId(), user.getId())));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(20, popularityIndex.getLikes(film2.getId()));
+        assertEquals(5, popularityIndex.getLikes(film1.getId()));
+        assertEquals(List.of(film2.getId(), film1.getId()), popularityIndex.getTop(10));
+        assertTrue(popularityIndex.checkConsistency().isEmpty());
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void dislikeMovesFilmDown() {
+        Film film1 = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1)));
+        Film film2 = filmService.createFilm(
+                new Film("Name2", "Description2", LocalDate.now(), 100, new MPA(1)));
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000, 1, 1)));
+
+        filmService.likeFilm(film2.getId(), user.getId());
+        assertEquals(List.of(film2.getId(), film1.getId()), popularityIndex.getTop(2));
+
+        filmService.dislikeFilm(film2.getId(), user.getId());
+        assertEquals(List.of(film1.getId(), film2.getId()), popularityIndex.getTop(2));
+        assertTrue(popularityIndex.checkConsistency().isEmpty());
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void reconcileRepairsOutOfOrderUpdates() {
+        Film film = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1)));
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000, 1, 1)));
+
+        filmService.likeFilm(film.getId(), user.getId());
+        filmService.dislikeFilm(film.getId(), user.getId());
+        // те же изменения в обратном порядке: отмена упирается в 0, и лайк остаётся лишним
+        popularityIndex.dislike(film.getId());
+        popularityIndex.like(film.getId());
+        assertEquals(1, popularityIndex.checkConsistency().size());
+
+        assertEquals(1, popularityIndex.reconcile());
+        assertEquals(0, popularityIndex.getLikes(film.getId()));
+        assertTrue(popularityIndex.checkConsistency().isEmpty());
+    }
+}
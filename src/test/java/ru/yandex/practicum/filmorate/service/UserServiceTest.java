@@ -7,8 +7,10 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.context.SpringBootTest;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.UserStorage;
 
 import java.time.LocalDate;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -17,6 +19,8 @@ import static org.junit.jupiter.api.Assertions.*;
 class UserServiceTest {
     @Autowired
     private UserService userService;
+    @Autowired
+    private UserStorage userStorage;
 
     @Test
     void confirmUserAsFriend() {
@@ -51,4 +55,56 @@ class UserServiceTest {
         assertThrows(NotFoundException.class, () -> userService.confirmUserAsFriend(user.getId(), -1));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void friendChangesUseStoredFriendships() {
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000,1,1)));
+
+        User otherUser = userService.createUser(
+                new User("test2@yandex.ru", "login2", "name2", LocalDate.of(2001,2,2)));
+
+        // связь записана в обход сервиса: граф друзей о ней не знает
+        userStorage.addFriend(user.getId(), new User.Friend(user.getId(), otherUser.getId(),
+                User.ConnectionType.Unconfirmed));
+
+        User result = userService.confirmUserAsFriend(user.getId(), otherUser.getId());
+        assertEquals(User.ConnectionType.Confirmed, result.getFriends().iterator().next().getConnectionType());
+
+        assertEquals(0, userService.deleteUserFromFriends(user.getId(), otherUser.getId()).getFriends().size());
+        assertEquals(0, userService.getUserById(user.getId()).getFriends().size());
+    }
+
+    @Test
+    void getCommonFriends() {
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000,1,1)));
+        User otherUser = userService.createUser(
+                new User("test2@yandex.ru", "login2", "name2", LocalDate.of(2001,2,2)));
+        User common1 = userService.createUser(
+                new User("test3@yandex.ru", "login3", "name3", LocalDate.of(2002,3,3)));
+        User common2 = userService.createUser(
+                new User("test4@yandex.ru", "login4", "name4", LocalDate.of(2003,4,4)));
+        User single = userService.createUser(
+                new User("test5@yandex.ru", "login5", "name5", LocalDate.of(2004,5,5)));
+
+        userService.addUserToFriends(user.getId(), common1.getId());
+        userService.addUserToFriends(user.getId(), common2.getId());
+        userService.addUserToFriends(user.getId(), single.getId());
+        userService.addUserToFriends(otherUser.getId(), common2.getId());
+        userService.addUserToFriends(otherUser.getId(), common1.getId());
+
+        // оба пользователя в кэше — пересечение в памяти
+        userService.getUserById(user.getId());
+        userService.getUserById(otherUser.getId());
+        assertEquals(List.of(common1, common2), userStorage.findCommonFriends(user.getId(), otherUser.getId()));
+        assertEquals(List.of(common1, common2), userService.getCommonFriends(user.getId(), otherUser.getId()));
+
+        // после изменения друзей пользователь вытеснен из кэша — пересечение в базе
+        userService.deleteUserFromFriends(otherUser.getId(), common1.getId());
+        assertEquals(List.of(common2), userStorage.findCommonFriends(user.getId(), otherUser.getId()));
+        assertEquals(List.of(common2), userService.getCommonFriends(user.getId(), otherUser.getId()));
+
+        assertThrows(NotFoundException.class, () -> userService.getCommonFriends(user.getId(), -1));
+    }
+}
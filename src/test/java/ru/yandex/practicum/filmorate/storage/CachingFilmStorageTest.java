@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.impl.CachingFilmStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+class CachingFilmStorageTest {
+    @Autowired
+    private CachingFilmStorage filmStorage;
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private UserService userService;
+
+    @Test
+    void findByIdIsCachedUntilLike() {
+        Film film = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1)));
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000, 1, 1)));
+
+        long hits = filmStorage.getStats().hitCount();
+        Film first = filmService.getFilmById(film.getId());
+        Film second = filmService.getFilmById(film.getId());
+
+        assertSame(first, second);
+        assertEquals(hits + 1, filmStorage.getStats().hitCount());
+
+        filmService.likeFilm(film.getId(), user.getId());
+
+        assertEquals(List.of(user.getId()), List.copyOf(filmService.getFilmById(film.getId()).getLikes()));
+    }
+
+    @Test
+    void findByIdsLoadsOnlyMissingFilms() {
+        Film film1 = filmService.createFilm(
+                new Film("Name1", "Description1", LocalDate.now(), 100, new MPA(1)));
+        Film film2 = filmService.createFilm(
+                new Film("Name2", "Description2", LocalDate.now(), 100, new MPA(1)));
+
+        filmStorage.findById(film1.getId());
+        long misses = filmStorage.getStats().missCount();
+
+        List<Film> films = filmStorage.findByIds(List.of(film1.getId(), film2.getId()));
+
+        assertEquals(2, films.size());
+        assertEquals(misses + 1, filmStorage.getStats().missCount());
+    }
+}
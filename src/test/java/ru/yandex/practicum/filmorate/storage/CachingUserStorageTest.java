@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.impl.CachingUserStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+class CachingUserStorageTest {
+    @Autowired
+    private CachingUserStorage userStorage;
+    @Autowired
+    private UserService userService;
+
+    @Test
+    void friendsAreRefreshedAfterInvalidation() {
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000, 1, 1)));
+        User otherUser = userService.createUser(
+                new User("test2@yandex.ru", "login2", "name2", LocalDate.of(2001, 2, 2)));
+
+        long hits = userStorage.getStats().hitCount();
+        userService.getUserById(user.getId());
+        userService.getUserById(user.getId());
+        assertEquals(hits + 1, userStorage.getStats().hitCount());
+
+        userService.addUserToFriends(user.getId(), otherUser.getId());
+        assertEquals(1, userService.getUserById(user.getId()).getFriends().size());
+
+        userService.deleteUserFromFriends(user.getId(), otherUser.getId());
+        assertEquals(0, userService.getUserById(user.getId()).getFriends().size());
+    }
+
+    @Test
+    void cachedUserIsNotChangedByFriendUpdates() {
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000, 1, 1)));
+        User otherUser = userService.createUser(
+                new User("test2@yandex.ru", "login2", "name2", LocalDate.of(2001, 2, 2)));
+
+        User cached = userService.getUserById(user.getId());
+        User result = userService.addUserToFriends(user.getId(), otherUser.getId());
+
+        assertNotSame(cached, result);
+        assertEquals(0, cached.getFriends().size());
+        assertEquals(1, result.getFriends().size());
+
+        result = userService.confirmUserAsFriend(user.getId(), otherUser.getId());
+        assertEquals(User.ConnectionType.Confirmed, result.getFriends().iterator().next().getConnectionType());
+    }
+
+    @Test
+    void batchLookupUsesCachedUsers() {
+        User user = userService.createUser(
+                new User("test1@yandex.ru", "login1", "name1", LocalDate.of(2000, 1, 1)));
+        User otherUser = userService.createUser(
+                new User("test2@yandex.ru", "login2", "name2", LocalDate.of(2001, 2, 2)));
+
+        userStorage.findById(user.getId());
+        long misses = userStorage.getStats().missCount();
+
+        List<User> users = userStorage.findById(Set.of(user.getId(), otherUser.getId()));
+
+        assertEquals(2, users.size());
+        assertEquals(misses + 1, userStorage.getStats().missCount());
+        users.forEach(found -> assertNotNull(found.getFriends()));
+    }
+}
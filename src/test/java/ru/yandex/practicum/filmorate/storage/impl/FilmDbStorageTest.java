@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.storage.impl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+class FilmDbStorageTest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Test
+    void popularByGenreUsesGenreIndex() {
+        String plan = explain(null, 1L);
+        assertTrue(plan.contains("FILM_GENRES_GENRE_IDX"), plan);
+    }
+
+    @Test
+    void popularByYearUsesReleaseDateIndex() {
+        String plan = explain(2000, null);
+        assertTrue(plan.contains("FILMS_RELEASE_DATE_IDX"), plan);
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void saveWritesOnlyChanges() {
+        Film film = new Film("Name", "Description", LocalDate.of(2000, 1, 1), 100, new MPA(1));
+        film.setGenres(Set.of(new Genre(1), new Genre(2)));
+        long before = filmStorage.getRowsWritten();
+        filmStorage.save(film);
+        assertEquals(3, filmStorage.getRowsWritten() - before);
+
+        before = filmStorage.getRowsWritten();
+        filmStorage.save(film);
+        assertEquals(0, filmStorage.getRowsWritten() - before);
+
+        // поля фильма не перезаписываются: удаление и вставка жанра и подъём версии
+        film.setGenres(Set.of(new Genre(2), new Genre(3)));
+        before = filmStorage.getRowsWritten();
+        filmStorage.save(film);
+        assertEquals(3, filmStorage.getRowsWritten() - before);
+        assertEquals(1, film.getVersion());
+
+        film.setDuration(120);
+        before = filmStorage.getRowsWritten();
+        filmStorage.save(film);
+        assertEquals(1, filmStorage.getRowsWritten() - before);
+
+        Film stored = filmStorage.findById(film.getId()).orElseThrow();
+        assertEquals(2, stored.getVersion());
+        assertEquals(120, stored.getDuration());
+        assertEquals(Set.of(2L, 3L), stored.getGenres().stream().map(Genre::getId).collect(Collectors.toSet()));
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void saveRejectsStaleVersion() {
+        Film film = filmStorage.save(new Film("Name", "Description", LocalDate.of(2000, 1, 1), 100, new MPA(1)));
+        assertEquals(0, film.getVersion());
+
+        Film stale = new Film("Name", "Description", LocalDate.of(2000, 1, 1), 100, new MPA(1));
+        stale.setId(film.getId());
+        stale.setVersion(0L);
+
+        film.setName("Name2");
+        filmStorage.save(film);
+        assertEquals(1, film.getVersion());
+
+        stale.setDuration(200);
+        assertThrows(OptimisticLockingFailureException.class, () -> filmStorage.save(stale));
+        assertEquals(100, filmStorage.findById(film.getId()).orElseThrow().getDuration());
+
+        stale.setVersion(null);
+        filmStorage.save(stale);
+        assertEquals(2, stale.getVersion());
+    }
+
+    private String explain(Integer year, Long genreId) {
+        List<Object> params = new ArrayList<>();
+        String sqlQuery = FilmDbStorage.popularQuery(10, genreId, year, params);
+        return jdbcTemplate.queryForObject("explain " + sqlQuery, String.class, params.toArray());
+    }
+}